@@ -0,0 +1,24 @@
+package com.example.merkletree;
+
+import com.example.merkletree.composite.Composite;
+import com.example.merkletree.utils.CryptoUtils;
+
+/**
+ * Calculates the hash of the content of a {@link Composite} while a {@link MerkleTreeNode 'merkle tree'} is built.
+ */
+@FunctionalInterface
+public interface ContentHasher {
+
+    /**
+     * Hashes the {@link Composite#getContentBytes() 'content bytes'} of every composite.
+     */
+    ContentHasher DEFAULT = (composite, hashAlgorithm) -> CryptoUtils.hash(composite.getContentBytes(),
+            hashAlgorithm);
+
+    /**
+     * @param composite     The composite to hash the content of.
+     * @param hashAlgorithm The hash algorithm to use.
+     * @return The hash of the content of {@code composite}.
+     */
+    byte[] hash(Composite composite, HashAlgorithm hashAlgorithm);
+}
@@ -0,0 +1,22 @@
+package com.example.merkletree;
+
+/**
+ * The rules by which the hash of a group of hash values (a partial hashtree) is calculated.
+ * <p>
+ * The first releases sorted the values signed and hashed every group, including groups with a single value. Since
+ * the XML evidence records, groups are hashed like RFC 4998 and RFC 6283 prescribe, which changes every root hash: a
+ * tree built with the current rules does not reproduce a root hash that was timestamped or persisted before. Build
+ * the tree with {@link #LEGACY} to verify such a root hash.
+ */
+public enum GroupHashing {
+    /**
+     * Sort the values in binary ascending order (unsigned), concatenate and hash them. A group with a single value
+     * passes that value on unchanged, so the hash of a leaf node is its content hash. The default.
+     */
+    RFC4998,
+    /**
+     * Sort the values as signed bytes, concatenate and hash them, even if the group has a single value. Only use it to
+     * verify root hashes created before the switch to {@link #RFC4998}.
+     */
+    LEGACY
+}
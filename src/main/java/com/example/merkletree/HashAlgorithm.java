@@ -8,14 +8,16 @@ import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.tsp.TSPAlgorithms;
 
 public enum HashAlgorithm {
-    SHA256("SHA-256", TSPAlgorithms.SHA256);
+    SHA256("SHA-256", TSPAlgorithms.SHA256, "http://www.w3.org/2001/04/xmlenc#sha256");
 
     private String algorithmName;
     private ASN1ObjectIdentifier oid;
+    private String xmlDigestMethod;
 
-    HashAlgorithm(String algorithmName, ASN1ObjectIdentifier tspOid) {
+    HashAlgorithm(String algorithmName, ASN1ObjectIdentifier tspOid, String xmlDigestMethod) {
         this.algorithmName = algorithmName;
         this.oid = tspOid;
+        this.xmlDigestMethod = xmlDigestMethod;
     }
 
     public String getAlgorithmName() {
@@ -26,6 +28,14 @@ public enum HashAlgorithm {
         return oid;
     }
 
+    /**
+     * @return the algorithm URI used in the {@code DigestMethod} element of XML structures like RFC 6283 evidence
+     *         records.
+     */
+    public String getXmlDigestMethod() {
+        return xmlDigestMethod;
+    }
+
     public MessageDigest getMessageDigest() {
         try {
             return MessageDigest.getInstance(algorithmName);
@@ -0,0 +1,28 @@
+package com.example.merkletree;
+
+/**
+ * Read-only view of a node in a merkle hash tree, independent of whether the tree is held in memory
+ * ({@link MerkleTreeNode}) or read from disk ({@link com.example.merkletree.store.MerkleTreeFile}).
+ */
+public interface HashTreeNode {
+
+    /**
+     * @return the hash of this node, calculated over the content hash and the hashes of all children.
+     */
+    byte[] getHash();
+
+    /**
+     * @return the hash of the content of the composite this node was built on, or {@code null} for an intermediate
+     *         node of a tree with bounded fanout.
+     */
+    byte[] getContentHash();
+
+    /**
+     * @return the stable id of the composite this node was built on, or {@code null} if it has none.
+     */
+    String getId();
+
+    int getChildCount();
+
+    HashTreeNode getChild(int index);
+}
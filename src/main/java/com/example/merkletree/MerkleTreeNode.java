@@ -14,18 +14,26 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * Used to construct a merkle hash tree over a {@link Composite 'test composite'}. See
  * {@link MerkleTreeNode#MerkleTreeNode(Composite, HashAlgorithm)}.
+ * <p>
+ * Nodes are immutable, so a tree can be shared between threads without locking. Use {@link VersionedMerkleTree} to
+ * derive updated trees that share all unchanged subtrees.
  */
 @Slf4j
-public class MerkleTreeNode {
-    private byte[] hash;
-    private Composite composite;
-    private List<MerkleTreeNode> children = new ArrayList<>();
+public class MerkleTreeNode implements HashTreeNode {
+    private static final int UNBOUNDED_FANOUT = Integer.MAX_VALUE;
+
+    private final byte[] hash;
+    private final byte[] contentHash;
+    private final Composite composite;
+    private final List<MerkleTreeNode> children;
     private final HashAlgorithm hashAlgorithm;
+    private final GroupHashing groupHashing;
 
     /**
      * Construct a merkle hash tree over the {@code composite} and its children:
      * <ol>
-     * <li>Recursively construct merkle tree nodes on the children of {@code composite}.</li>
+     * <li>Construct merkle tree nodes on all descendants of {@code composite}, deepest first. The tree is traversed
+     * with {@link TreeTraversal}, so its depth is not limited by the thread stack.</li>
      * <li>Calculate a hash on the sorted concatenation of the hashes of all {@link MerkleTreeNode 'child nodes'}
      * together with the hash of {@code composite}.</li>
      * </ol>
@@ -34,31 +42,177 @@ public class MerkleTreeNode {
      * @param hashAlgorithm The {@link HashAlgorithm 'hash algorithm'} to use.
      */
     public MerkleTreeNode(Composite composite, HashAlgorithm hashAlgorithm) {
+        this(composite, hashAlgorithm, ContentHasher.DEFAULT);
+    }
+
+    /**
+     * Construct a merkle hash tree like {@link MerkleTreeNode#MerkleTreeNode(Composite, HashAlgorithm)}, but let
+     * {@code contentHasher} calculate the hashes of the composite contents, e.g. to reuse the digests of content that
+     * was already hashed.
+     *
+     * @param composite     The tree data to construct the hash tree over.
+     * @param hashAlgorithm The {@link HashAlgorithm 'hash algorithm'} to use.
+     * @param contentHasher Calculates the hash of the content of each composite.
+     */
+    public MerkleTreeNode(Composite composite, HashAlgorithm hashAlgorithm, ContentHasher contentHasher) {
+        this(composite, hashAlgorithm, contentHasher, UNBOUNDED_FANOUT);
+    }
+
+    /**
+     * Construct a merkle hash tree like {@link MerkleTreeNode#MerkleTreeNode(Composite, HashAlgorithm, ContentHasher)},
+     * but limit the number of hash values in every partial hashtree to {@code maxFanout}. The children of wider nodes
+     * are split into balanced layers of intermediate nodes, as RFC 4998 allows, so that the size of a reduced hash
+     * tree and the cost of hashing one group grow logarithmically with the number of children. Intermediate nodes
+     * have no composite and no content hash, their hash is calculated over the hashes of their children only.
+     *
+     * @param composite     The tree data to construct the hash tree over.
+     * @param hashAlgorithm The {@link HashAlgorithm 'hash algorithm'} to use.
+     * @param contentHasher Calculates the hash of the content of each composite.
+     * @param maxFanout     The maximum number of hash values in one group, at least 2.
+     */
+    public MerkleTreeNode(Composite composite, HashAlgorithm hashAlgorithm, ContentHasher contentHasher,
+            int maxFanout) {
+        this(composite, buildChildren(composite, hashAlgorithm, contentHasher, checkFanout(maxFanout),
+                GroupHashing.RFC4998), hashAlgorithm, contentHasher.hash(composite, hashAlgorithm),
+                GroupHashing.RFC4998);
+    }
+
+    /**
+     * Construct a merkle hash tree like {@link MerkleTreeNode#MerkleTreeNode(Composite, HashAlgorithm)}, but hash the
+     * groups with the given rules. Use {@link GroupHashing#LEGACY} to reproduce a root hash that was timestamped
+     * before the switch to {@link GroupHashing#RFC4998}.
+     *
+     * @param composite     The tree data to construct the hash tree over.
+     * @param hashAlgorithm The {@link HashAlgorithm 'hash algorithm'} to use.
+     * @param groupHashing  The rules to hash the groups with.
+     */
+    public MerkleTreeNode(Composite composite, HashAlgorithm hashAlgorithm, GroupHashing groupHashing) {
+        this(composite, buildChildren(composite, hashAlgorithm, ContentHasher.DEFAULT, UNBOUNDED_FANOUT,
+                groupHashing), hashAlgorithm, ContentHasher.DEFAULT.hash(composite, hashAlgorithm), groupHashing);
+    }
+
+    MerkleTreeNode(Composite composite, List<MerkleTreeNode> children, HashAlgorithm hashAlgorithm,
+            byte[] contentHash) {
+        this(composite, children, hashAlgorithm, contentHash, GroupHashing.RFC4998);
+    }
+
+    private MerkleTreeNode(Composite composite, List<MerkleTreeNode> children, HashAlgorithm hashAlgorithm,
+            byte[] contentHash, GroupHashing groupHashing) {
         this.hashAlgorithm = hashAlgorithm;
+        this.groupHashing = groupHashing;
         this.composite = composite;
+        this.children = List.copyOf(children);
+        this.contentHash = contentHash;
+        this.hash = calculateHash();
+    }
+
+    private static int checkFanout(int maxFanout) {
+        if (maxFanout < 2) {
+            throw new IllegalArgumentException("The maximum fanout must be at least 2, but was " + maxFanout);
+        }
+        return maxFanout;
+    }
+
+    private static List<MerkleTreeNode> buildChildren(Composite composite, HashAlgorithm hashAlgorithm,
+            ContentHasher contentHasher, int maxFanout, GroupHashing groupHashing) {
+        List<MerkleTreeNode> children = new ArrayList<>();
         for (Composite compChild : composite.getChildren()) {
-            children.add(new MerkleTreeNode(compChild, hashAlgorithm));
+            children.add(TreeTraversal.fold(compChild, Composite::getChildren,
+                    (node, nodeChildren) -> new MerkleTreeNode(node,
+                            layer(nodeChildren, hashAlgorithm, maxFanout, groupHashing), hashAlgorithm,
+                            contentHasher.hash(node, hashAlgorithm), groupHashing)));
+        }
+        return layer(children, hashAlgorithm, maxFanout, groupHashing);
+    }
+
+    /**
+     * Group {@code children} into intermediate nodes until at most {@code maxFanout - 1} nodes are left, so that the
+     * group of the parent including its content hash does not exceed {@code maxFanout} values. Each layer splits the
+     * nodes of the layer below into groups of almost equal size.
+     */
+    static List<MerkleTreeNode> layer(List<MerkleTreeNode> children, HashAlgorithm hashAlgorithm,
+            int maxFanout) {
+        return layer(children, hashAlgorithm, maxFanout, GroupHashing.RFC4998);
+    }
+
+    private static List<MerkleTreeNode> layer(List<MerkleTreeNode> children, HashAlgorithm hashAlgorithm,
+            int maxFanout, GroupHashing groupHashing) {
+        List<MerkleTreeNode> layer = children;
+        while (layer.size() > maxFanout - 1) {
+            int groups = (layer.size() + maxFanout - 1) / maxFanout;
+            List<MerkleTreeNode> next = new ArrayList<>(groups);
+            for (int group = 0; group < groups; group++) {
+                int from = (int) ((long) layer.size() * group / groups);
+                int to = (int) ((long) layer.size() * (group + 1) / groups);
+                // a group of one would only pass the hash of its single node on, so the node is kept as it is
+                next.add(to - from == 1 ? layer.get(from)
+                        : new MerkleTreeNode(null, new ArrayList<>(layer.subList(from, to)), hashAlgorithm, null,
+                                groupHashing));
+            }
+            layer = next;
         }
-        calculateHash();
+        return layer;
     }
 
     /**
      * @return the hash calculated in the {@link MerkleTreeNode#MerkleTreeNode(Composite, HashAlgorithm)
      *         'constructor'}.
      */
+    @Override
     public byte[] getHash() {
         return hash;
     }
 
     /**
      *
-     * @return the list of all {@link MerkleTreeNode 'child nodes'} calculated in the
+     * @return the unmodifiable list of all {@link MerkleTreeNode 'child nodes'} calculated in the
      *         {@link MerkleTreeNode#MerkleTreeNode(Composite, HashAlgorithm) 'constructor'}.
      */
     public List<MerkleTreeNode> getChildren() {
         return children;
     }
 
+    /**
+     * @return the hash of the content of the composite this node was built on, or {@code null} for an intermediate
+     *         node.
+     */
+    @Override
+    public byte[] getContentHash() {
+        return contentHash;
+    }
+
+    @Override
+    public String getId() {
+        return composite == null ? null : composite.getId();
+    }
+
+    @Override
+    public int getChildCount() {
+        return children.size();
+    }
+
+    @Override
+    public MerkleTreeNode getChild(int index) {
+        return children.get(index);
+    }
+
+    /**
+     * @return the composite this node was built on, or {@code null} for an intermediate node that only groups the
+     *         children of a wide node, see
+     *         {@link MerkleTreeNode#MerkleTreeNode(Composite, HashAlgorithm, ContentHasher, int)}.
+     */
+    public Composite getComposite() {
+        return composite;
+    }
+
+    /**
+     * @return the hash of the composite content together with the hashes of all {@link MerkleTreeNode 'child nodes'}.
+     *         Hashing the sorted concatenation of these values results in {@link MerkleTreeNode#getHash()}.
+     */
+    public PartialHashtree getPartialHashtree() {
+        return new PartialHashtree(getHashes());
+    }
+
     /**
      * Search the ancestors of this node for some node where {@link MerkleTreeNode#hash} matches the given hash. Returns
      * all nodes and their children that lie on the path as partial hashtrees. The path is returned in reverse order,
@@ -69,29 +223,20 @@ public class MerkleTreeNode {
      *         found.
      */
     public PartialHashtree[] getPathFromAncestor(byte[] ancestorHash) {
-        PartialHashtree[] path = null;
+        List<MerkleTreeNode> nodes = TreeTraversal.findPath(this, MerkleTreeNode::getChildren,
+                node -> Arrays.equals(node.hash, ancestorHash));
 
-        // recursion anchor
-        if (Arrays.equals(hash, ancestorHash)) {
-            path = new PartialHashtree[1];
-            path[0] = new PartialHashtree(getHashes());
-            return path;
+        // has no ancestor with the given hash
+        if (nodes == null) {
+            return null;
         }
 
-        // recursion step
-        for (int i = 0; i < children.size(); i++) {
-            MerkleTreeNode child = children.get(i);
-            PartialHashtree[] childPath = child.getPathFromAncestor(ancestorHash);
-            if (childPath != null) {
-                path = new PartialHashtree[childPath.length + 1];
-                path[childPath.length] = new PartialHashtree(getHashes());
-                System.arraycopy(childPath, 0, path, 0, childPath.length);
-                return path;
-            }
+        // allocated once at its final size, the found node comes first
+        PartialHashtree[] path = new PartialHashtree[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            path[nodes.size() - 1 - i] = nodes.get(i).getPartialHashtree();
         }
-
-        // has no ancestor with the given hash
-        return null;
+        return path;
     }
 
     /**
@@ -101,42 +246,33 @@ public class MerkleTreeNode {
      * @return The ancestor node or {@code null} if not found.
      */
     public MerkleTreeNode findAncestor(Composite composite) {
-        if (composite.equals(this.composite)) {
-            return this;
-        }
-
-        for (MerkleTreeNode child : children) {
-            MerkleTreeNode ancestor = child.findAncestor(composite);
-            if (ancestor != null) {
-                return ancestor;
-            }
-        }
-
-        return null;
+        List<MerkleTreeNode> path = TreeTraversal.findPath(this, MerkleTreeNode::getChildren,
+                node -> composite.equals(node.composite));
+        return path == null ? null : path.get(path.size() - 1);
     }
 
     /**
-     * Calculates the hash of the corresponding test composite content. Returns it together with the hashes of all child
-     * merkle tree nodes.
+     * Returns the hash of the corresponding test composite content together with the hashes of all child merkle tree
+     * nodes. Intermediate nodes contribute the hashes of their children only.
      */
     private byte[][] getHashes() {
-        byte[][] hashes = new byte[children.size() + 1][];
+        byte[][] hashes = new byte[children.size() + (contentHash == null ? 0 : 1)][];
         for (int i = 0; i < children.size(); i++) {
             hashes[i] = children.get(i).getHash();
         }
-        hashes[children.size()] = CryptoUtils.hash(composite.getContent().getBytes(), hashAlgorithm);
+        if (contentHash != null) {
+            hashes[children.size()] = contentHash;
+        }
         return hashes;
     }
 
     /**
      * Calculate hash of {@link MerkleTreeNode#composite} content and add together with the hashes of all child nodes.
-     * Sort and concatenate all these hashes and calculate the own hash from the result.
-     *
-     * @param childrenHashes The hashes of all child merkle tree nodes.
+     * Sort and concatenate all these hashes and calculate the own hash from the result. A node without children uses
+     * the content hash as its own hash, unless the tree is built with {@link GroupHashing#LEGACY}, see
+     * {@link CryptoUtils#hashGroup(byte[][], HashAlgorithm, GroupHashing)}.
      */
-    private void calculateHash() {
-        byte[] allHashes = CryptoUtils.sortAndFlatten(getHashes());
-
-        hash = CryptoUtils.hash(allHashes, hashAlgorithm);
+    private byte[] calculateHash() {
+        return CryptoUtils.hashGroup(getHashes(), hashAlgorithm, groupHashing);
     }
 }
@@ -31,17 +31,44 @@ public class TimeStamping {
             HashAlgorithm hashAlgorithm) {
 
         // Obtain a timestamp for the root hash value
-        TimeStampRequestGenerator generator = new TimeStampRequestGenerator();
-        TimeStampRequest request = generator.generate(hashAlgorithm.getOid(), rootHash);
-        ContentInfo timeStamp = requestTimeStamp(request).toCMSSignedData().toASN1Structure();
+        TimeStampToken timeStamp = timeStampRootHash(rootHash, hashAlgorithm);
+
+        return createArchiveTimeStamp(reducedHashTree, timeStamp, hashAlgorithm);
+    }
+
+    /**
+     * Create an archive timestamp according to RFC 4998 using an existing timestamp of the root hash. This way all
+     * documents of one Merkle tree can share a single timestamp.
+     *
+     * @param reducedHashTree The reduced hash tree containing the path to some node that shall be archived.
+     * @param timeStamp       The timestamp over the root hash, see {@link #timeStampRootHash(byte[], HashAlgorithm)}.
+     * @param hashAlgorithm   The hash algorithm used to create the hash tree.
+     * @return The created archive timestamp.
+     */
+    public static ArchiveTimeStamp createArchiveTimeStamp(PartialHashtree[] reducedHashTree, TimeStampToken timeStamp,
+            HashAlgorithm hashAlgorithm) {
+        ContentInfo contentInfo = timeStamp.toCMSSignedData().toASN1Structure();
 
         AlgorithmIdentifier identifier = new AlgorithmIdentifier(hashAlgorithm.getOid());
 
         // Create the archive timestamp
-        ArchiveTimeStamp archiveTimeStamp = new ArchiveTimeStamp(identifier, reducedHashTree, timeStamp);
+        ArchiveTimeStamp archiveTimeStamp = new ArchiveTimeStamp(identifier, reducedHashTree, contentInfo);
         return archiveTimeStamp;
     }
 
+    /**
+     * Obtain a timestamp for the root hash of a Merkle tree.
+     *
+     * @param rootHash      The root hash of the Merkle tree.
+     * @param hashAlgorithm The hash algorithm used to create the hash tree.
+     * @return The timestamp token over {@code rootHash}.
+     */
+    public static TimeStampToken timeStampRootHash(byte[] rootHash, HashAlgorithm hashAlgorithm) {
+        TimeStampRequestGenerator generator = new TimeStampRequestGenerator();
+        TimeStampRequest request = generator.generate(hashAlgorithm.getOid(), rootHash);
+        return requestTimeStamp(request);
+    }
+
     /**
      * Taken from
      * https://www.javatips.net/api/jsign-master/jsign-core/src/main/java/net/jsign/timestamp/RFC3161Timestamper.java
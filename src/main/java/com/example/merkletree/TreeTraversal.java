@@ -0,0 +1,170 @@
+package com.example.merkletree;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Traversal engine for all tree operations. Uses an explicit stack on the heap instead of recursion, so hierarchies
+ * of any depth can be processed without running out of thread stack.
+ */
+public final class TreeTraversal {
+
+    private TreeTraversal() {
+    }
+
+    /**
+     * Callbacks of a depth-first {@link TreeTraversal#walk(Object, Function, Visitor) 'walk'}.
+     *
+     * @param <N> The node type.
+     */
+    public interface Visitor<N> {
+
+        /**
+         * Called before the children of {@code node} are visited.
+         *
+         * @param node  The visited node.
+         * @param depth The depth of {@code node}, {@code 0} for the root.
+         * @return {@code true} to visit the children of {@code node}, {@code false} to skip them.
+         */
+        boolean enter(N node, int depth);
+
+        /**
+         * Called after all children of {@code node} were visited or skipped.
+         *
+         * @param node The visited node.
+         */
+        default void exit(N node) {
+        }
+    }
+
+    /**
+     * Depth-first walk over the tree below {@code root}.
+     *
+     * @param root     The root of the tree.
+     * @param children Returns the children of a node.
+     * @param visitor  The callbacks for each node.
+     */
+    public static <N> void walk(N root, Function<? super N, ? extends List<? extends N>> children,
+            Visitor<? super N> visitor) {
+        if (!visitor.enter(root, 0)) {
+            visitor.exit(root);
+            return;
+        }
+        Deque<Frame<N>> stack = new ArrayDeque<>();
+        stack.push(new Frame<>(root, children.apply(root)));
+        while (!stack.isEmpty()) {
+            Frame<N> frame = stack.peek();
+            if (frame.next < frame.children.size()) {
+                N child = frame.children.get(frame.next++);
+                if (visitor.enter(child, stack.size())) {
+                    stack.push(new Frame<>(child, children.apply(child)));
+                } else {
+                    visitor.exit(child);
+                }
+            } else {
+                stack.pop();
+                visitor.exit(frame.node);
+            }
+        }
+    }
+
+    /**
+     * Post-order fold over the tree below {@code root}: the result of each node is combined from the node and the
+     * results of its children.
+     *
+     * @param root     The root of the tree.
+     * @param children Returns the children of a node.
+     * @param combine  Calculates the result of a node from the node and the results of its children, in order.
+     * @return The result of {@code root}.
+     */
+    public static <N, R> R fold(N root, Function<? super N, ? extends List<? extends N>> children,
+            BiFunction<? super N, List<R>, R> combine) {
+        Deque<List<R>> results = new ArrayDeque<>();
+        List<R> rootResult = new ArrayList<>(1);
+        results.push(rootResult);
+        walk(root, children, new Visitor<N>() {
+            @Override
+            public boolean enter(N node, int depth) {
+                results.push(new ArrayList<>());
+                return true;
+            }
+
+            @Override
+            public void exit(N node) {
+                List<R> childResults = results.pop();
+                results.peek().add(combine.apply(node, childResults));
+            }
+        });
+        return rootResult.get(0);
+    }
+
+    /**
+     * Search the tree below {@code root} in pre-order for the first node matching {@code target}.
+     *
+     * @param root     The root of the tree.
+     * @param children Returns the children of a node.
+     * @param target   The condition the searched node fulfills.
+     * @return The nodes from {@code root} down to the found node, or {@code null} if no node matches.
+     */
+    public static <N> List<N> findPath(N root, Function<? super N, ? extends List<? extends N>> children,
+            Predicate<? super N> target) {
+        List<N> path = new ArrayList<>();
+        List<N> found = new ArrayList<>();
+        walk(root, children, new Visitor<N>() {
+            @Override
+            public boolean enter(N node, int depth) {
+                if (!found.isEmpty()) {
+                    return false;
+                }
+                path.add(node);
+                if (target.test(node)) {
+                    found.addAll(path);
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public void exit(N node) {
+                if (!path.isEmpty() && path.get(path.size() - 1) == node) {
+                    path.remove(path.size() - 1);
+                }
+            }
+        });
+        return found.isEmpty() ? null : found;
+    }
+
+    /**
+     * @return the children of {@code node} as a list, read on demand.
+     */
+    public static List<HashTreeNode> childrenOf(HashTreeNode node) {
+        return new AbstractList<>() {
+            @Override
+            public HashTreeNode get(int index) {
+                return node.getChild(index);
+            }
+
+            @Override
+            public int size() {
+                return node.getChildCount();
+            }
+        };
+    }
+
+    private static class Frame<N> {
+        private final N node;
+        private final List<? extends N> children;
+        private int next;
+
+        Frame(N node, List<? extends N> children) {
+            this.node = node;
+            this.children = children;
+        }
+    }
+}
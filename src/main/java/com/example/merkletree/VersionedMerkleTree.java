@@ -0,0 +1,307 @@
+package com.example.merkletree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.example.merkletree.composite.Composite;
+
+/**
+ * A merkle hash tree that changes over time. Every update publishes a new immutable {@link Version} whose root shares
+ * all unchanged subtrees with the previous version, so an update only creates new nodes on the path from the changed
+ * node to the root.
+ * <p>
+ * Readers take the current version with {@link #current()}, a single volatile read, and can create proofs on it
+ * without any locking while writers publish newer versions. Updates are serialized. Older versions stay available,
+ * e.g. for proofs against a root that was timestamped earlier, until they are discarded with
+ * {@link #discardVersionsBefore(long)}.
+ */
+public class VersionedMerkleTree {
+    private static final int UNBOUNDED_FANOUT = Integer.MAX_VALUE;
+
+    private final HashAlgorithm hashAlgorithm;
+    private final ContentHasher contentHasher;
+    private final int maxFanout;
+    private final NavigableMap<Long, Version> versions = new ConcurrentSkipListMap<>();
+    // index of the current version for the writers, so a node is found without searching the tree
+    private final Map<Composite, MerkleTreeNode> documents = new HashMap<>();
+    private final Map<MerkleTreeNode, MerkleTreeNode> parents = new IdentityHashMap<>();
+    private volatile Version current;
+
+    /**
+     * Build the first version of the tree over {@code composite}.
+     *
+     * @param composite     The tree data to construct the hash tree over.
+     * @param hashAlgorithm The {@link HashAlgorithm 'hash algorithm'} to use.
+     */
+    public VersionedMerkleTree(Composite composite, HashAlgorithm hashAlgorithm) {
+        this(composite, hashAlgorithm, ContentHasher.DEFAULT, UNBOUNDED_FANOUT);
+    }
+
+    /**
+     * Build the first version of the tree over {@code composite}, see
+     * {@link MerkleTreeNode#MerkleTreeNode(Composite, HashAlgorithm, ContentHasher, int)}. All updates use the same
+     * content hasher and keep the fanout bounded.
+     *
+     * @param composite     The tree data to construct the hash tree over.
+     * @param hashAlgorithm The {@link HashAlgorithm 'hash algorithm'} to use.
+     * @param contentHasher Calculates the hash of the content of each composite.
+     * @param maxFanout     The maximum number of hash values in one group, at least 2.
+     */
+    public VersionedMerkleTree(Composite composite, HashAlgorithm hashAlgorithm, ContentHasher contentHasher,
+            int maxFanout) {
+        this.hashAlgorithm = hashAlgorithm;
+        this.contentHasher = contentHasher;
+        this.maxFanout = maxFanout;
+        MerkleTreeNode root = new MerkleTreeNode(composite, hashAlgorithm, contentHasher, maxFanout);
+        index(root);
+        publish(root);
+    }
+
+    /**
+     * @return the latest published version.
+     */
+    public Version current() {
+        return current;
+    }
+
+    /**
+     * @param number The number of the version.
+     * @return the version with the given number, or {@code null} if it does not exist or was discarded.
+     */
+    public Version getVersion(long number) {
+        return versions.get(number);
+    }
+
+    /**
+     * @param rootHash The root hash of the version, e.g. taken from a timestamp.
+     * @return the latest version with the given root hash, or {@code null} if there is none.
+     */
+    public Version findVersion(byte[] rootHash) {
+        for (Version version : versions.descendingMap().values()) {
+            if (Arrays.equals(version.root().getHash(), rootHash)) {
+                return version;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drop all versions older than {@code number}, so that nodes only they reference can be garbage collected.
+     *
+     * @param number The number of the oldest version to keep.
+     */
+    public void discardVersionsBefore(long number) {
+        versions.headMap(Math.min(number, current.number())).clear();
+    }
+
+    /**
+     * Publish a version in which the content hash of the node built on {@code composite} is calculated again, e.g.
+     * after the content of the composite changed.
+     *
+     * @param composite The changed composite.
+     * @return The new version.
+     * @throws IllegalArgumentException If the composite is not part of the current version.
+     */
+    public synchronized Version update(Composite composite) {
+        List<MerkleTreeNode> path = pathTo(composite);
+        MerkleTreeNode node = path.get(path.size() - 1);
+        MerkleTreeNode updated = new MerkleTreeNode(composite, node.getChildren(), hashAlgorithm,
+                contentHasher.hash(composite, hashAlgorithm));
+        return publish(replaceOnPath(path, path.size() - 1, updated));
+    }
+
+    /**
+     * Publish a version in which {@code child} and its descendants were added below {@code parent}. With a bounded
+     * fanout the child is appended to the last intermediate node below the parent, splitting it if it is full, so
+     * all other intermediate nodes are shared with the previous version. The layers may then differ from those of a
+     * tree built from scratch, the proofs stay valid.
+     *
+     * @param parent The composite to add the child to.
+     * @param child  The added composite.
+     * @return The new version.
+     * @throws IllegalArgumentException If the parent is not part of the current version.
+     */
+    public synchronized Version add(Composite parent, Composite child) {
+        List<MerkleTreeNode> path = pathTo(parent);
+        MerkleTreeNode parentNode = path.get(path.size() - 1);
+        MerkleTreeNode childNode = new MerkleTreeNode(child, hashAlgorithm, contentHasher, maxFanout);
+        index(childNode);
+
+        // the content hash takes one value of the group of the parent
+        List<MerkleTreeNode> children = append(parentNode.getChildren(), childNode);
+        if (children.size() > maxFanout - 1) {
+            children = List.of(intermediate(children, null));
+        }
+        MerkleTreeNode updated = new MerkleTreeNode(parentNode.getComposite(), children, hashAlgorithm,
+                parentNode.getContentHash());
+        return publish(replaceOnPath(path, path.size() - 1, updated));
+    }
+
+    /**
+     * Publish a version in which the node built on {@code composite} and all its descendants were removed. Only the
+     * intermediate nodes above the removed node change, an intermediate node left with a single child is replaced by
+     * that child.
+     *
+     * @param composite The removed composite.
+     * @return The new version.
+     * @throws IllegalArgumentException If the composite is not part of the current version or is its root.
+     */
+    public synchronized Version remove(Composite composite) {
+        List<MerkleTreeNode> path = pathTo(composite);
+        if (path.size() < 2) {
+            throw new IllegalArgumentException("The root of the tree cannot be removed");
+        }
+        MerkleTreeNode node = path.get(path.size() - 1);
+        MerkleTreeNode parentNode = path.get(path.size() - 2);
+        List<MerkleTreeNode> children = new ArrayList<>(parentNode.getChildren());
+        children.remove(indexOf(children, node));
+        unindex(node);
+
+        MerkleTreeNode updated;
+        if (parentNode.getComposite() == null && children.size() == 1) {
+            updated = children.get(0);
+        } else {
+            updated = new MerkleTreeNode(parentNode.getComposite(), children, hashAlgorithm,
+                    parentNode.getContentHash());
+        }
+        return publish(replaceOnPath(path, path.size() - 2, updated));
+    }
+
+    /**
+     * The nodes from the root of the current version down to the node built on {@code composite}, taken from the
+     * index in time proportional to the depth of the node.
+     */
+    private List<MerkleTreeNode> pathTo(Composite composite) {
+        MerkleTreeNode node = documents.get(composite);
+        if (node == null) {
+            throw new IllegalArgumentException("The composite is not part of the tree");
+        }
+        List<MerkleTreeNode> path = new ArrayList<>();
+        for (; node != null; node = parents.get(node)) {
+            path.add(node);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Copy all nodes on {@code path} above {@code index}, replacing the node at {@code index} with {@code node}.
+     * Everything off the path is shared with the previous version.
+     *
+     * @return The new root.
+     */
+    private MerkleTreeNode replaceOnPath(List<MerkleTreeNode> path, int index, MerkleTreeNode node) {
+        MerkleTreeNode replacement = node;
+        link(path.get(index), replacement);
+        for (int i = index - 1; i >= 0; i--) {
+            MerkleTreeNode parent = path.get(i);
+            List<MerkleTreeNode> children = new ArrayList<>(parent.getChildren());
+            children.set(indexOf(children, path.get(i + 1)), replacement);
+            replacement = new MerkleTreeNode(parent.getComposite(), children, hashAlgorithm,
+                    parent.getContentHash());
+            link(parent, replacement);
+        }
+        return replacement;
+    }
+
+    /**
+     * Append {@code child} at the end of {@code nodes}. While the last node is an intermediate node the child is
+     * appended to its children instead, and an intermediate node that gets more than {@code maxFanout} children is
+     * split into two, like the nodes of a B-tree. Only the intermediate nodes on the right edge change.
+     *
+     * @return The new nodes, the caller checks whether they still fit.
+     */
+    private List<MerkleTreeNode> append(List<MerkleTreeNode> nodes, MerkleTreeNode child) {
+        List<MerkleTreeNode> appended = new ArrayList<>(nodes);
+        MerkleTreeNode last = nodes.isEmpty() ? null : nodes.get(nodes.size() - 1);
+        if (last == null || last.getComposite() != null) {
+            appended.add(child);
+            return appended;
+        }
+        List<MerkleTreeNode> lastChildren = append(last.getChildren(), child);
+        appended.remove(appended.size() - 1);
+        if (lastChildren.size() <= maxFanout) {
+            appended.add(intermediate(lastChildren, last));
+        } else {
+            // appends only ever go to the right, so the left node is kept as full as possible
+            int split = lastChildren.size() - 2;
+            appended.add(intermediate(lastChildren.subList(0, split), last));
+            appended.add(intermediate(lastChildren.subList(split, lastChildren.size()), null));
+        }
+        return appended;
+    }
+
+    /**
+     * An intermediate node over {@code children}, or the single child itself, as in {@link MerkleTreeNode#layer}.
+     */
+    private MerkleTreeNode intermediate(List<MerkleTreeNode> children, MerkleTreeNode replaced) {
+        MerkleTreeNode node = children.size() == 1 ? children.get(0)
+                : new MerkleTreeNode(null, children, hashAlgorithm, null);
+        link(replaced, node);
+        return node;
+    }
+
+    /**
+     * Update the index for {@code replacement} taking the place of {@code replaced} in the current version.
+     */
+    private void link(MerkleTreeNode replaced, MerkleTreeNode replacement) {
+        if (replaced != null && replaced != replacement) {
+            parents.remove(replaced);
+        }
+        if (replacement.getComposite() != null) {
+            documents.put(replacement.getComposite(), replacement);
+        }
+        for (MerkleTreeNode child : replacement.getChildren()) {
+            parents.put(child, replacement);
+        }
+    }
+
+    private void index(MerkleTreeNode subtree) {
+        TreeTraversal.walk(subtree, MerkleTreeNode::getChildren, (node, depth) -> {
+            link(null, node);
+            return true;
+        });
+    }
+
+    private void unindex(MerkleTreeNode subtree) {
+        TreeTraversal.walk(subtree, MerkleTreeNode::getChildren, (node, depth) -> {
+            parents.remove(node);
+            if (node.getComposite() != null) {
+                documents.remove(node.getComposite());
+            }
+            return true;
+        });
+    }
+
+    private static int indexOf(List<MerkleTreeNode> nodes, MerkleTreeNode node) {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i) == node) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("The path does not match the tree");
+    }
+
+    private Version publish(MerkleTreeNode root) {
+        Version version = new Version(current == null ? 0 : current.number() + 1, root);
+        versions.put(version.number(), version);
+        current = version;
+        return version;
+    }
+
+    /**
+     * An immutable version of the tree.
+     *
+     * @param number The number of the version, starting with 0 for the initial tree.
+     * @param root   The root of the tree in this version.
+     */
+    public record Version(long number, MerkleTreeNode root) {
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.merkletree.cli;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.tsp.TimeStampToken;
+
+import com.example.merkletree.ContentHasher;
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.MerkleTreeNode;
+import com.example.merkletree.TimeStamping;
+import com.example.merkletree.composite.FileComposite;
+import com.example.merkletree.content.PersistentContentHashStore;
+import com.example.merkletree.evidence.XmlEvidenceRecordGenerator;
+import com.example.merkletree.store.MerkleTreeFile;
+
+/**
+ * Command line entry point for batch jobs, e.g. archiving runs started by cron. Unlike
+ * {@link com.example.merkletree.MerkleTreesApplication} it does not start a Spring context, so a short run is
+ * dominated by hashing instead of startup.
+ * <p>
+ * The {@code cli} Maven profile packages it as a plain jar with its dependencies in {@code target/lib} and records a
+ * class data sharing archive of a {@code build} training run, which is used like this:
+ *
+ * <pre>
+ * java -XX:SharedArchiveFile=target/merkletree-cli.jsa -jar target/merkletree-0.0.1-SNAPSHOT.jar build collection
+ * </pre>
+ *
+ * The archive only covers {@code build}. {@code stamp} and {@code evidence} can use it as well, but the classes they
+ * load on top are not archived: training them needs a reachable timestamp authority during the Maven build, and most
+ * of these classes come from the signed Bouncy Castle jars, which cannot be archived anyway.
+ * <p>
+ * All commands take {@code --fanout <n>} to bound the fanout of the tree and {@code --store <file>} to keep the
+ * content hashes of files in a {@link PersistentContentHashStore}, so that a repeated run only reads changed files.
+ * <p>
+ * Commands:
+ * <ul>
+ * <li>{@code build <collection> [--tree <file>]}: print the root hash and optionally persist the tree.</li>
+ * <li>{@code stamp <collection> <token file>}: timestamp the root hash and write the DER encoded token.</li>
+ * <li>{@code evidence <collection> <output directory>}: timestamp the root hash and write an XML evidence record
+ * for every file and directory, named by its URL encoded relative path.</li>
+ * </ul>
+ */
+public class MerkleTreeCli {
+    private static final HashAlgorithm HASH_ALGORITHM = HashAlgorithm.SHA256;
+    private static final String USAGE = """
+            Usage:
+              build <collection> [--tree <file>]
+              stamp <collection> <token file>
+              evidence <collection> <output directory>
+            Options:
+              --fanout <n>    maximum number of children per node
+              --store <file>  reuse the content hashes of unchanged files""";
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Run one command.
+     *
+     * @param args The command and its arguments.
+     * @param out  Receives the results.
+     * @param err  Receives usage and error messages.
+     * @return The exit code, {@code 0} on success.
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        return run(args, out, err, TimeStamping::timeStampRootHash);
+    }
+
+    /**
+     * Run one command with another source of timestamps than {@link TimeStamping}.
+     *
+     * @param timeStamping Obtains a timestamp for a root hash.
+     */
+    static int run(String[] args, PrintStream out, PrintStream err,
+            BiFunction<byte[], HashAlgorithm, TimeStampToken> timeStamping) {
+        if (args.length < 2) {
+            err.println(USAGE);
+            return 2;
+        }
+
+        List<String> positional = new ArrayList<>();
+        int maxFanout = Integer.MAX_VALUE;
+        Path treeFile = null;
+        Path storeFile = null;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                case "--fanout" -> maxFanout = Integer.parseInt(args[++i]);
+                case "--tree" -> treeFile = Path.of(args[++i]);
+                case "--store" -> storeFile = Path.of(args[++i]);
+                default -> positional.add(args[i]);
+                }
+            }
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            err.println(USAGE);
+            return 2;
+        }
+        // check the whole command line before the store is opened, which may create or repair its file
+        int expectedPositional = switch (args[0]) {
+        case "build" -> 1;
+        case "stamp", "evidence" -> 2;
+        default -> 0;
+        };
+        if (expectedPositional == 0 || positional.size() != expectedPositional) {
+            err.println(USAGE);
+            return 2;
+        }
+
+        FileComposite collection = new FileComposite(Path.of(positional.get(0)));
+        if (!Files.isDirectory(collection.getPath())) {
+            err.println(collection.getPath() + " is not a directory");
+            return 1;
+        }
+        try (PersistentContentHashStore store = storeFile != null ? PersistentContentHashStore.open(storeFile) : null) {
+            ContentHasher contentHasher = store != null ? store : ContentHasher.DEFAULT;
+            switch (args[0]) {
+            case "build" -> {
+                MerkleTreeNode tree = build(collection, contentHasher, maxFanout);
+                if (treeFile != null) {
+                    MerkleTreeFile.write(tree, treeFile);
+                }
+                out.println(HexFormat.of().formatHex(tree.getHash()));
+            }
+            case "stamp" -> {
+                registerBouncyCastle();
+                MerkleTreeNode tree = build(collection, contentHasher, maxFanout);
+                TimeStampToken timeStamp = timeStamping.apply(tree.getHash(), HASH_ALGORITHM);
+                Files.write(Path.of(positional.get(1)), timeStamp.getEncoded());
+                out.println(HexFormat.of().formatHex(tree.getHash()));
+            }
+            case "evidence" -> {
+                registerBouncyCastle();
+                MerkleTreeNode tree = build(collection, contentHasher, maxFanout);
+                XmlEvidenceRecordGenerator generator = new XmlEvidenceRecordGenerator(HASH_ALGORITHM,
+                        composite -> evidenceRecordName((FileComposite) composite));
+                int count = generator.generate(tree, timeStamping.apply(tree.getHash(), HASH_ALGORITHM),
+                        Path.of(positional.get(1)));
+                out.println(count + " evidence records for root " + HexFormat.of().formatHex(tree.getHash()));
+            }
+            }
+        } catch (IOException | RuntimeException e) {
+            err.println(args[0] + " failed: " + e.getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Only the timestamping commands need the provider. Its classes come from a signed jar, which cannot be put into
+     * the class data sharing archive, so loading it would undo most of the startup saved by the archive for
+     * {@code build}.
+     */
+    private static void registerBouncyCastle() {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    private static MerkleTreeNode build(FileComposite collection, ContentHasher contentHasher, int maxFanout) {
+        return new MerkleTreeNode(collection, HASH_ALGORITHM, contentHasher, maxFanout);
+    }
+
+    private static String evidenceRecordName(FileComposite composite) {
+        String relativePath = composite.getRelativePath();
+        // the relative path of a file is never "/", so the name of the root cannot clash with one of a file
+        return (relativePath.isEmpty() ? "%2F" : URLEncoder.encode(relativePath, StandardCharsets.UTF_8)) + ".xml";
+    }
+}
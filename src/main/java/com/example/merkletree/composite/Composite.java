@@ -8,4 +8,20 @@ public abstract class Composite {
 
     public abstract List<Composite> getChildren();
 
+    /**
+     * @return an id that identifies this composite across versions of a collection, e.g. a path or uuid, or
+     *         {@code null} if it has none.
+     */
+    public String getId() {
+        return null;
+    }
+
+    /**
+     * @return the bytes the content hash of this composite is calculated on. Defaults to the encoded
+     *         {@link #getContent() content}.
+     */
+    public byte[] getContentBytes() {
+        return getContent().getBytes();
+    }
+
 }
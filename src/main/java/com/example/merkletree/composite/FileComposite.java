@@ -0,0 +1,119 @@
+package com.example.merkletree.composite;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Composite over a file or directory. A file's content is its bytes. A directory's content is its path relative to
+ * the collection root, its children are the files and directories it contains, sorted by name so that the tree built
+ * over a collection does not depend on the order the file system lists them in.
+ */
+public class FileComposite extends Composite {
+
+    private final Path root;
+    private final Path path;
+    private List<Composite> children;
+
+    /**
+     * @param root The root directory of the collection.
+     */
+    public FileComposite(Path root) {
+        this(root, root);
+    }
+
+    private FileComposite(Path root, Path path) {
+        this.root = root;
+        this.path = path;
+    }
+
+    /**
+     * @param relativePath A path relative to the collection root, using {@code /} as separator.
+     * @return the composite over the file or directory at {@code relativePath} in the same collection.
+     */
+    public FileComposite resolve(String relativePath) {
+        return new FileComposite(root, root.resolve(relativePath));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the path relative to the collection root, using {@code /} as separator.
+     */
+    public String getRelativePath() {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    public boolean isDirectory() {
+        return Files.isDirectory(path);
+    }
+
+    /**
+     * @return the fingerprint of the file, see {@link FileFingerprint}.
+     */
+    public FileFingerprint getFingerprint() {
+        return FileFingerprint.of(path);
+    }
+
+    /**
+     * @return the {@link #getRelativePath() 'relative path'}.
+     */
+    @Override
+    public String getId() {
+        return getRelativePath();
+    }
+
+    @Override
+    public String getContent() {
+        return new String(getContentBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] getContentBytes() {
+        if (isDirectory()) {
+            return getRelativePath().getBytes(StandardCharsets.UTF_8);
+        }
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + path, e);
+        }
+    }
+
+    @Override
+    public List<Composite> getChildren() {
+        if (children == null) {
+            children = new ArrayList<>();
+            if (isDirectory()) {
+                try (Stream<Path> entries = Files.list(path)) {
+                    entries.sorted().forEach(entry -> children.add(new FileComposite(root, entry)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not list " + path, e);
+                }
+            }
+        }
+        return children;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof FileComposite other && path.equals(other.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.merkletree.composite;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Cheap identity of a file's content that can be read without opening the file. The file key is the inode on file
+ * systems that have one, otherwise the absolute path.
+ *
+ * @param fileKey      The file key or absolute path of the file.
+ * @param size         The size of the file in bytes.
+ * @param lastModified The time of the last modification in milliseconds since the epoch.
+ */
+public record FileFingerprint(Object fileKey, long size, long lastModified) {
+
+    public static FileFingerprint of(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            Object fileKey = attributes.fileKey() != null ? attributes.fileKey() : path.toAbsolutePath().toString();
+            return new FileFingerprint(fileKey, attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the attributes of " + path, e);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.merkletree.composite;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+import com.example.merkletree.TreeTraversal;
+
+/**
+ * Reproducible synthetic collection for tests and benchmarks. The whole collection is derived from a seed: every node
+ * has its own seed, from which its content size, its number of children, its content and the seeds of its children
+ * are generated. Nodes are generated on demand and their content is generated again on every access, so collections
+ * with millions of nodes do not have to be held in memory and the same seed always produces the same collection,
+ * independent of the order the nodes are visited in.
+ */
+public class SyntheticCollection {
+    private final long seed;
+    private final int depth;
+    private final Distribution fanout;
+    private final Distribution contentSize;
+
+    /**
+     * @param seed        The seed of the collection.
+     * @param depth       The depth of the deepest documents, {@code 0} for a collection consisting of the root only.
+     * @param fanout      The distribution of the number of children of a node above the maximum depth.
+     * @param contentSize The distribution of the content size of a node in bytes.
+     */
+    public SyntheticCollection(long seed, int depth, Distribution fanout, Distribution contentSize) {
+        this.seed = seed;
+        this.depth = depth;
+        this.fanout = fanout;
+        this.contentSize = contentSize;
+    }
+
+    /**
+     * @return the root of the collection.
+     */
+    public Composite getRoot() {
+        return new Node(seed, 0);
+    }
+
+    /**
+     * @return the number of nodes in the collection, counted without generating any content.
+     */
+    public long countNodes() {
+        long[] count = { 0 };
+        TreeTraversal.walk(getRoot(), Composite::getChildren, (node, nodeDepth) -> {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+
+    /**
+     * A distribution of non-negative integers.
+     */
+    @FunctionalInterface
+    public interface Distribution {
+
+        int sample(RandomGenerator random);
+
+        static Distribution fixed(int value) {
+            return random -> value;
+        }
+
+        /**
+         * @return values between {@code min} and {@code max}, both inclusive, with equal probability.
+         */
+        static Distribution uniform(int min, int max) {
+            return random -> random.nextInt(min, max + 1);
+        }
+
+        /**
+         * @return exponentially distributed values with the given mean, cut off at {@code max}. Most values are small
+         *         while a few are large, like the sizes of files in a typical collection.
+         */
+        static Distribution exponential(double mean, int max) {
+            return random -> (int) Math.min(max, random.nextExponential() * mean);
+        }
+    }
+
+    private class Node extends Composite {
+        private final long nodeSeed;
+        private final int nodeDepth;
+
+        Node(long nodeSeed, int nodeDepth) {
+            this.nodeSeed = nodeSeed;
+            this.nodeDepth = nodeDepth;
+        }
+
+        @Override
+        public String getId() {
+            return Long.toHexString(nodeSeed) + "@" + nodeDepth;
+        }
+
+        @Override
+        public String getContent() {
+            return new String(getContentBytes(), StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public byte[] getContentBytes() {
+            SplittableRandom random = new SplittableRandom(nodeSeed);
+            byte[] content = new byte[contentSize.sample(random)];
+            new SplittableRandom(random.nextLong()).nextBytes(content);
+            // printable, so that the content is the same as a string and as bytes
+            for (int i = 0; i < content.length; i++) {
+                content[i] = (byte) ('0' + (content[i] & 0x3F));
+            }
+            return content;
+        }
+
+        @Override
+        public List<Composite> getChildren() {
+            if (nodeDepth == depth) {
+                return List.of();
+            }
+            SplittableRandom random = new SplittableRandom(nodeSeed);
+            contentSize.sample(random);
+            random.nextLong();
+            int childCount = fanout.sample(random);
+            List<Composite> children = new ArrayList<>(childCount);
+            for (int i = 0; i < childCount; i++) {
+                children.add(new Node(random.nextLong(), nodeDepth + 1));
+            }
+            return children;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Node other && nodeSeed == other.nodeSeed && nodeDepth == other.nodeDepth;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(nodeSeed) * 31 + nodeDepth;
+        }
+    }
+}
@@ -1,26 +1,45 @@
 package com.example.merkletree.composite;
 
 import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class TestComposite extends Composite {
 
-    private String content = "";
+    private final String uuid;
+    private final String content;
     private final List<TestComposite> children;
 
     public TestComposite(List<TestComposite> children) {
+        this(children, ThreadLocalRandom.current());
+    }
+
+    /**
+     * Create a composite whose id and content are taken from {@code random}, so that a seeded random creates the same
+     * composites in every run.
+     *
+     * @param children The children of the composite.
+     * @param random   The source of the id and the content.
+     */
+    public TestComposite(List<TestComposite> children, Random random) {
         this.children = children;
-        generateRandomContent();
+        this.uuid = new UUID(random.nextLong(), random.nextLong()).toString();
+        this.content = generateRandomContent(random);
     }
 
-    private void generateRandomContent() {
-        int length = randomInt();
+    private static String generateRandomContent(Random random) {
+        int length = random.nextInt(100);
+        StringBuilder content = new StringBuilder(2 * length);
         for (int i = 0; i < length; i++) {
-            content += String.valueOf(randomInt());
+            content.append(random.nextInt(100));
         }
+        return content.toString();
     }
 
-    private int randomInt() {
-        return (int) (Math.random() * 100);
+    @Override
+    public String getId() {
+        return uuid;
     }
 
     @Override
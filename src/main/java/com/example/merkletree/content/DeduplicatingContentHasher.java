@@ -0,0 +1,115 @@
+package com.example.merkletree.content;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+import com.example.merkletree.ContentHasher;
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.composite.Composite;
+import com.example.merkletree.composite.FileComposite;
+import com.example.merkletree.composite.FileFingerprint;
+import com.example.merkletree.utils.CryptoUtils;
+
+/**
+ * {@link ContentHasher} that reuses the digest of content it has already hashed:
+ * <ol>
+ * <li>Files whose {@link FileFingerprint 'fingerprint'} (inode, size, modification time) was seen before are not read
+ * again.</li>
+ * <li>Otherwise the content is read and a CRC32C checksum is calculated. If content with the same length and checksum
+ * was hashed before and is byte-identical, its digest is reused. The checksum only selects candidates, the digest is
+ * never reused without a full comparison.</li>
+ * </ol>
+ * To compare contents, hashed content is retained in memory up to a configurable limit. Content above that limit is
+ * still hashed correctly, it is just not available for deduplication.
+ * <p>
+ * Only the first step saves I/O. On a fingerprint miss the whole content is read, whether it turns out to be a
+ * duplicate or not, because a digest is never reused without a full comparison. A duplicate therefore costs the same
+ * reads as any other file and only saves the digest calculation. To avoid reading unchanged files across runs, use a
+ * {@link PersistentContentHashStore} in front of this hasher.
+ */
+public class DeduplicatingContentHasher implements ContentHasher {
+    private static final long DEFAULT_MAX_RETAINED_BYTES = 64L * 1024 * 1024;
+
+    private final long maxRetainedBytes;
+    private final Map<FingerprintKey, byte[]> digestsByFingerprint = new ConcurrentHashMap<>();
+    private final Map<ChecksumKey, List<HashedContent>> contentsByChecksum = new ConcurrentHashMap<>();
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final AtomicLong reusedDigests = new AtomicLong();
+
+    public DeduplicatingContentHasher() {
+        this(DEFAULT_MAX_RETAINED_BYTES);
+    }
+
+    /**
+     * @param maxRetainedBytes The maximum number of content bytes kept in memory for comparison.
+     */
+    public DeduplicatingContentHasher(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    @Override
+    public byte[] hash(Composite composite, HashAlgorithm hashAlgorithm) {
+        FingerprintKey fingerprintKey = null;
+        if (composite instanceof FileComposite file && !file.isDirectory()) {
+            fingerprintKey = new FingerprintKey(file.getFingerprint(), hashAlgorithm);
+            byte[] digest = digestsByFingerprint.get(fingerprintKey);
+            if (digest != null) {
+                reusedDigests.incrementAndGet();
+                return digest;
+            }
+        }
+
+        byte[] content = composite.getContentBytes();
+        byte[] digest = hashContent(content, hashAlgorithm);
+
+        if (fingerprintKey != null) {
+            digestsByFingerprint.put(fingerprintKey, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * @return the number of contents whose digest was reused instead of being calculated.
+     */
+    public long getReusedDigests() {
+        return reusedDigests.get();
+    }
+
+    private byte[] hashContent(byte[] content, HashAlgorithm hashAlgorithm) {
+        CRC32C crc = new CRC32C();
+        crc.update(content);
+        ChecksumKey checksumKey = new ChecksumKey(content.length, crc.getValue(), hashAlgorithm);
+
+        List<HashedContent> candidates = contentsByChecksum.computeIfAbsent(checksumKey, key -> new ArrayList<>());
+        synchronized (candidates) {
+            for (HashedContent candidate : candidates) {
+                if (Arrays.equals(candidate.content(), content)) {
+                    reusedDigests.incrementAndGet();
+                    return candidate.digest();
+                }
+            }
+
+            byte[] digest = CryptoUtils.hash(content, hashAlgorithm);
+            if (retainedBytes.addAndGet(content.length) <= maxRetainedBytes) {
+                candidates.add(new HashedContent(content, digest));
+            } else {
+                retainedBytes.addAndGet(-content.length);
+            }
+            return digest;
+        }
+    }
+
+    private record FingerprintKey(FileFingerprint fingerprint, HashAlgorithm hashAlgorithm) {
+    }
+
+    private record ChecksumKey(int length, long checksum, HashAlgorithm hashAlgorithm) {
+    }
+
+    private record HashedContent(byte[] content, byte[] digest) {
+    }
+}
@@ -0,0 +1,367 @@
+package com.example.merkletree.content;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+import com.example.merkletree.ContentHasher;
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.composite.Composite;
+import com.example.merkletree.composite.FileComposite;
+import com.example.merkletree.composite.FileFingerprint;
+import com.example.merkletree.utils.FileUtils;
+
+/**
+ * {@link ContentHasher} that remembers the digests of files across runs. A file is identified by its
+ * {@link FileComposite#getId() 'id'}, and its digest is reused as long as its {@link FileFingerprint 'fingerprint'}
+ * (inode, size, modification time) is unchanged, so an unchanged collection is hashed again without reading a single
+ * file. Changed files, directories and other composites are hashed by the delegate.
+ * <p>
+ * The store is a log of records after a header (magic, version). Each record holds the id, hash algorithm,
+ * fingerprint and digest of one file, framed by its length and a CRC32C checksum. {@link #open(Path, ContentHasher)}
+ * scans the file in windows with positional reads and loads every record into an on-heap {@link ConcurrentHashMap},
+ * the latest record of an id and algorithm wins, so all stored digests have to fit into memory. A record that was not
+ * written completely, e.g. because the process crashed, fails the checksum and is cut off together with everything
+ * after it. New digests are appended through a {@link FileChannel} and become durable with {@link #flush()} or
+ * {@link #close()}. {@link #compact()} rewrites the store without superseded records to a temporary file that
+ * atomically replaces the store, {@link #close()} does so when most records are superseded.
+ * <p>
+ * Files modified less than {@value #RACY_MILLIS} ms before they were hashed are not stored: a second modification
+ * within the timestamp granularity of the file system would not change the fingerprint.
+ * <p>
+ * All methods are thread-safe.
+ */
+public class PersistentContentHashStore implements ContentHasher, AutoCloseable {
+    private static final int MAGIC = 0x4D4B4353; // "MKCS"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 4 + 4;
+    private static final long RACY_MILLIS = 2000;
+    private static final int SCAN_WINDOW = 1 << 20;
+    /**
+     * Far above any real record, ids are paths. A longer length is taken as a corrupted tail.
+     */
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    private final Path file;
+    private final ContentHasher delegate;
+    private final Map<Key, Entry> entries;
+    private final AtomicLong reusedDigests = new AtomicLong();
+    private FileChannel channel;
+    private long end;
+    private long records;
+
+    private PersistentContentHashStore(Path file, ContentHasher delegate, FileChannel channel, Map<Key, Entry> entries,
+            long end, long records) {
+        this.file = file;
+        this.delegate = delegate;
+        this.channel = channel;
+        this.entries = entries;
+        this.end = end;
+        this.records = records;
+    }
+
+    /**
+     * Open the store in {@code file} with the {@link ContentHasher#DEFAULT 'default'} hasher as delegate.
+     *
+     * @see #open(Path, ContentHasher)
+     */
+    public static PersistentContentHashStore open(Path file) throws IOException {
+        return open(file, ContentHasher.DEFAULT);
+    }
+
+    /**
+     * Open the store in {@code file}, creating it if it does not exist. An incomplete or corrupted tail is truncated.
+     *
+     * @param file     The file of the store.
+     * @param delegate Hashes all content whose digest is not in the store.
+     * @return The opened store, which has to be closed after use.
+     * @throws IOException If the file could not be opened or is not a content hash store.
+     */
+    public static PersistentContentHashStore open(Path file, ContentHasher delegate) throws IOException {
+        // left over by a compaction that did not finish, the store itself is still intact
+        Files.deleteIfExists(temporaryFile(file));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_LENGTH) {
+                channel.truncate(0);
+                writeFully(channel, header(), 0);
+                channel.force(true);
+            }
+            Scanner scanner = new Scanner(channel);
+            ByteBuffer header = scanner.read(0, HEADER_LENGTH);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException(file + " is not a content hash store");
+            }
+
+            Map<Key, Entry> entries = new ConcurrentHashMap<>();
+            long records = 0;
+            long position = HEADER_LENGTH;
+            while (true) {
+                ByteBuffer lengthBytes = scanner.read(position, 4);
+                if (lengthBytes == null) {
+                    break;
+                }
+                int length = lengthBytes.getInt(0);
+                if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                    break;
+                }
+                ByteBuffer framed = scanner.read(position + 4, length + 4);
+                if (framed == null) {
+                    break;
+                }
+                ByteBuffer record = framed.slice(0, length);
+                CRC32C crc = new CRC32C();
+                crc.update(record.duplicate());
+                if ((int) crc.getValue() != framed.getInt(length)) {
+                    break;
+                }
+                try {
+                    decode(record, entries);
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    // the checksum matched, so the record is complete but was written by an incompatible version
+                }
+                position += 4 + length + 4;
+                records++;
+            }
+            if (position < channel.size()) {
+                channel.truncate(position);
+                channel.force(true);
+            }
+            return new PersistentContentHashStore(file, delegate, channel, entries, position, records);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] hash(Composite composite, HashAlgorithm hashAlgorithm) {
+        if (!(composite instanceof FileComposite file) || file.isDirectory()) {
+            return delegate.hash(composite, hashAlgorithm);
+        }
+        Key key = new Key(file.getId(), hashAlgorithm);
+        FileFingerprint fingerprint = storedFingerprint(file.getFingerprint());
+        Entry entry = entries.get(key);
+        if (entry != null && entry.fingerprint().equals(fingerprint)) {
+            reusedDigests.incrementAndGet();
+            return entry.digest().clone();
+        }
+
+        long hashingStarted = System.currentTimeMillis();
+        byte[] digest = delegate.hash(composite, hashAlgorithm);
+        // only store the digest if the file was not modified while or shortly before it was read
+        if (fingerprint.equals(storedFingerprint(file.getFingerprint()))
+                && fingerprint.lastModified() < hashingStarted - RACY_MILLIS) {
+            put(key, new Entry(fingerprint, digest.clone()));
+        }
+        return digest;
+    }
+
+    /**
+     * @return the number of digests taken from the store instead of being calculated.
+     */
+    public long getReusedDigests() {
+        return reusedDigests.get();
+    }
+
+    /**
+     * @return the number of files with a stored digest, counting each hash algorithm separately.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Force all appended digests to disk.
+     *
+     * @throws IOException If the store could not be written.
+     */
+    public synchronized void flush() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Rewrite the store with only the latest record of every file and hash algorithm. The store is written to a
+     * temporary file first, which then atomically replaces it, so a crash leaves either the old or the new store.
+     *
+     * @throws IOException If the store could not be written.
+     */
+    public synchronized void compact() throws IOException {
+        Path temporary = temporaryFile(file);
+        long position = HEADER_LENGTH;
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, header(), 0);
+            for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+                ByteBuffer record = encode(entry.getKey(), entry.getValue());
+                int length = record.remaining();
+                writeFully(out, record, position);
+                position += length;
+            }
+            out.force(true);
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            // the store and its channel are untouched, appending goes on
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        FileUtils.syncDirectory(file.toAbsolutePath().getParent());
+        FileChannel compacted = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.close();
+        channel = compacted;
+        end = position;
+        records = entries.size();
+    }
+
+    /**
+     * Flush the store, compacting it first if most of its records are superseded.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (records > 2L * entries.size()) {
+                compact();
+            }
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        try {
+            ByteBuffer record = encode(key, entry);
+            int length = record.remaining();
+            if (length - 8 > MAX_RECORD_LENGTH) {
+                // would be cut off as a corrupted tail when the store is opened again
+                return;
+            }
+            writeFully(channel, record, end);
+            end += length;
+            records++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to " + file, e);
+        }
+        entries.put(key, entry);
+    }
+
+    /**
+     * The file key is only compared, so it is stored as string, which is how it is persisted.
+     */
+    private static FileFingerprint storedFingerprint(FileFingerprint fingerprint) {
+        return new FileFingerprint(String.valueOf(fingerprint.fileKey()), fingerprint.size(),
+                fingerprint.lastModified());
+    }
+
+    private static ByteBuffer encode(Key key, Entry entry) {
+        byte[] id = key.id().getBytes(StandardCharsets.UTF_8);
+        byte[] algorithm = key.hashAlgorithm().name().getBytes(StandardCharsets.UTF_8);
+        byte[] fileKey = ((String) entry.fingerprint().fileKey()).getBytes(StandardCharsets.UTF_8);
+        byte[] digest = entry.digest();
+        int length = 4 + id.length + 4 + algorithm.length + 4 + fileKey.length + 8 + 8 + 4 + digest.length;
+
+        ByteBuffer record = ByteBuffer.allocate(4 + length + 4);
+        record.putInt(length);
+        record.putInt(id.length).put(id);
+        record.putInt(algorithm.length).put(algorithm);
+        record.putInt(fileKey.length).put(fileKey);
+        record.putLong(entry.fingerprint().size());
+        record.putLong(entry.fingerprint().lastModified());
+        record.putInt(digest.length).put(digest);
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), 4, length);
+        record.putInt((int) crc.getValue());
+        return record.flip();
+    }
+
+    private static void decode(ByteBuffer record, Map<Key, Entry> entries) {
+        String id = readString(record);
+        HashAlgorithm hashAlgorithm = HashAlgorithm.valueOf(readString(record));
+        String fileKey = readString(record);
+        FileFingerprint fingerprint = new FileFingerprint(fileKey, record.getLong(), record.getLong());
+        byte[] digest = new byte[record.getInt()];
+        record.get(digest);
+        entries.put(new Key(id, hashAlgorithm), new Entry(fingerprint, digest));
+    }
+
+    private static String readString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0 || length > record.remaining()) {
+            throw new IllegalArgumentException("Bad string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer header() {
+        return ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putInt(VERSION).flip();
+    }
+
+    private static Path temporaryFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    /**
+     * Reads the store in windows of {@value #SCAN_WINDOW} bytes with positional reads, so stores of any size can be
+     * scanned without mapping them.
+     */
+    private static class Scanner {
+        private final FileChannel channel;
+        private ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW).limit(0);
+        private long windowStart;
+
+        Scanner(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @return the {@code length} bytes at {@code position}, or {@code null} if the file ends before.
+         */
+        ByteBuffer read(long position, int length) throws IOException {
+            if (position < windowStart || position + length > windowStart + window.limit()) {
+                if (length > window.capacity()) {
+                    window = ByteBuffer.allocate(length);
+                }
+                window.clear();
+                windowStart = position;
+                while (window.hasRemaining()) {
+                    if (channel.read(window, windowStart + window.position()) < 0) {
+                        break;
+                    }
+                }
+                window.flip();
+                if (window.limit() < length) {
+                    return null;
+                }
+            }
+            return window.slice((int) (position - windowStart), length);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private record Key(String id, HashAlgorithm hashAlgorithm) {
+    }
+
+    private record Entry(FileFingerprint fingerprint, byte[] digest) {
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.merkletree.diff;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.example.merkletree.HashTreeNode;
+
+/**
+ * Structural diff between two merkle hash trees. Subtrees with equal hashes are identical and are skipped without
+ * being visited, so the cost depends on the number and depth of the changes rather than on the size of the trees.
+ * Works on any {@link HashTreeNode}, e.g. an in-memory {@link com.example.merkletree.MerkleTreeNode} against a tree
+ * persisted in a {@link com.example.merkletree.store.MerkleTreeFile}.
+ */
+public class MerkleTreeDiff {
+
+    private MerkleTreeDiff() {
+    }
+
+    /**
+     * Compare two trees. Added and removed subtrees are reported once at their root and not descended into.
+     * <p>
+     * Children of two matching nodes are paired as follows: children with equal ids are compared recursively, so the
+     * same content moving to another id is reported as modifications of both ids. Children without an id are
+     * unchanged if the other node has a child without an id with an equal hash, the remaining ones are paired in
+     * order.
+     *
+     * @param oldTree The root of the older tree.
+     * @param newTree The root of the newer tree.
+     * @return All changes, in no particular order.
+     */
+    public static List<TreeChange> diff(HashTreeNode oldTree, HashTreeNode newTree) {
+        List<TreeChange> changes = new ArrayList<>();
+        Deque<Pair> pending = new ArrayDeque<>();
+        pending.push(new Pair(oldTree, newTree, label(newTree, "", 0)));
+
+        while (!pending.isEmpty()) {
+            Pair pair = pending.pop();
+            if (Arrays.equals(pair.oldNode.getHash(), pair.newNode.getHash())) {
+                continue;
+            }
+            if (!Arrays.equals(pair.oldNode.getContentHash(), pair.newNode.getContentHash())) {
+                changes.add(new TreeChange(TreeChange.Type.MODIFIED, pair.path, pair.oldNode, pair.newNode));
+            }
+            compareChildren(pair, pending, changes);
+        }
+        return changes;
+    }
+
+    private static void compareChildren(Pair pair, Deque<Pair> pending, List<TreeChange> changes) {
+        // children with an id are paired by it, the loop in diff skips pairs with equal hashes
+        Map<String, Integer> oldById = new HashMap<>();
+        List<Integer> oldWithoutId = new ArrayList<>();
+        for (int i = 0; i < pair.oldNode.getChildCount(); i++) {
+            String id = pair.oldNode.getChild(i).getId();
+            if (id != null) {
+                oldById.put(id, i);
+            } else {
+                oldWithoutId.add(i);
+            }
+        }
+        boolean[] oldPaired = new boolean[pair.oldNode.getChildCount()];
+        List<Integer> newWithoutId = new ArrayList<>();
+        for (int j = 0; j < pair.newNode.getChildCount(); j++) {
+            HashTreeNode newChild = pair.newNode.getChild(j);
+            if (newChild.getId() == null) {
+                newWithoutId.add(j);
+                continue;
+            }
+            Integer i = oldById.get(newChild.getId());
+            if (i != null) {
+                oldPaired[i] = true;
+                pending.push(new Pair(pair.oldNode.getChild(i), newChild, label(newChild, pair.path, j)));
+            } else {
+                changes.add(new TreeChange(TreeChange.Type.ADDED, label(newChild, pair.path, j), null, newChild));
+            }
+        }
+        for (int i : oldById.values()) {
+            if (!oldPaired[i]) {
+                HashTreeNode oldChild = pair.oldNode.getChild(i);
+                changes.add(new TreeChange(TreeChange.Type.REMOVED, label(oldChild, pair.path, i), oldChild, null));
+            }
+        }
+
+        // children without an id, e.g. the intermediate nodes of a bounded fanout, are unchanged if a child with an
+        // equal hash exists, the remaining ones are paired in order
+        Map<ByteBuffer, Deque<Integer>> oldByHash = new HashMap<>();
+        for (int i : oldWithoutId) {
+            oldByHash.computeIfAbsent(ByteBuffer.wrap(pair.oldNode.getChild(i).getHash()), hash -> new ArrayDeque<>())
+                    .add(i);
+        }
+        List<Integer> newChanged = new ArrayList<>();
+        for (int j : newWithoutId) {
+            Deque<Integer> unchanged = oldByHash.get(ByteBuffer.wrap(pair.newNode.getChild(j).getHash()));
+            if (unchanged != null && !unchanged.isEmpty()) {
+                oldPaired[unchanged.poll()] = true;
+            } else {
+                newChanged.add(j);
+            }
+        }
+        Iterator<Integer> unpairedNew = newChanged.iterator();
+        for (int i : oldWithoutId) {
+            if (oldPaired[i]) {
+                continue;
+            }
+            HashTreeNode oldChild = pair.oldNode.getChild(i);
+            if (unpairedNew.hasNext()) {
+                int j = unpairedNew.next();
+                HashTreeNode newChild = pair.newNode.getChild(j);
+                pending.push(new Pair(oldChild, newChild, label(newChild, pair.path, j)));
+            } else {
+                changes.add(new TreeChange(TreeChange.Type.REMOVED, label(oldChild, pair.path, i), oldChild, null));
+            }
+        }
+        while (unpairedNew.hasNext()) {
+            int j = unpairedNew.next();
+            HashTreeNode newChild = pair.newNode.getChild(j);
+            changes.add(new TreeChange(TreeChange.Type.ADDED, label(newChild, pair.path, j), null, newChild));
+        }
+    }
+
+    private static String label(HashTreeNode node, String parentPath, int index) {
+        if (node.getId() != null) {
+            return node.getId();
+        }
+        return parentPath.isEmpty() ? String.valueOf(index) : parentPath + "/" + index;
+    }
+
+    private record Pair(HashTreeNode oldNode, HashTreeNode newNode, String path) {
+    }
+}
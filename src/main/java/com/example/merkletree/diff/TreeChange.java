@@ -0,0 +1,24 @@
+package com.example.merkletree.diff;
+
+import com.example.merkletree.HashTreeNode;
+
+/**
+ * A difference between two merkle hash trees found by {@link MerkleTreeDiff}.
+ *
+ * @param type    The kind of change.
+ * @param path    The id of the changed node. For a node without id, the path of its parent followed by {@code /}
+ *                and its index among its siblings.
+ * @param oldNode The node in the old tree, {@code null} if the node was added.
+ * @param newNode The node in the new tree, {@code null} if the node was removed.
+ */
+public record TreeChange(Type type, String path, HashTreeNode oldNode, HashTreeNode newNode) {
+
+    public enum Type {
+        /** The node and its whole subtree only exist in the new tree. */
+        ADDED,
+        /** The node and its whole subtree only exist in the old tree. */
+        REMOVED,
+        /** The node exists in both trees, but its content changed. */
+        MODIFIED
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.merkletree.dss;
+
+import eu.europa.esig.dss.asic.xades.ASiCWithXAdESSignatureParameters;
+import eu.europa.esig.dss.asic.xades.signature.ASiCWithXAdESService;
+import eu.europa.esig.dss.enumerations.ASiCContainerType;
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.enumerations.SignatureLevel;
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.FileDocument;
+import eu.europa.esig.dss.model.SignatureValue;
+import eu.europa.esig.dss.model.ToBeSigned;
+import eu.europa.esig.dss.spi.validation.CertificateVerifier;
+import eu.europa.esig.dss.spi.x509.tsp.TSPSource;
+import eu.europa.esig.dss.token.DSSPrivateKeyEntry;
+import eu.europa.esig.dss.token.SignatureTokenConnection;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Signs and extends many ASiC-E containers concurrently. All containers share one {@link CertificateVerifier} (and
+ * therefore one revocation cache, see {@link RevocationCache}) and a fixed pool of signing tokens. A token is only
+ * used by one thread at a time.
+ */
+public class BatchContainerService implements AutoCloseable {
+    private final CertificateVerifier certificateVerifier;
+    private final TSPSource tspSource;
+    private final SignatureLevel signatureLevel;
+    private final DigestAlgorithm digestAlgorithm;
+    private final BlockingQueue<SigningKey> signingKeys;
+    private final ExecutorService executor;
+
+    /**
+     * @param certificateVerifier The verifier shared by all containers, already configured with trust anchors and
+     *                            revocation sources.
+     * @param tspSource           The timestamp source for -T and -LTA levels, may be {@code null} for -B.
+     * @param signatureLevel      The target level of every container, e.g. {@code XAdES_BASELINE_LTA}.
+     * @param signingTokens       The pool of signing tokens. The first key of each token is used.
+     * @param parallelism         The number of containers processed at the same time.
+     */
+    public BatchContainerService(CertificateVerifier certificateVerifier, TSPSource tspSource,
+            SignatureLevel signatureLevel, List<? extends SignatureTokenConnection> signingTokens, int parallelism) {
+        if (signingTokens.isEmpty()) {
+            throw new IllegalArgumentException("At least one signing token is required");
+        }
+        this.certificateVerifier = certificateVerifier;
+        this.tspSource = tspSource;
+        this.signatureLevel = signatureLevel;
+        this.digestAlgorithm = DigestAlgorithm.SHA256;
+        this.signingKeys = new ArrayBlockingQueue<>(signingTokens.size());
+        for (SignatureTokenConnection token : signingTokens) {
+            signingKeys.add(new SigningKey(token, token.getKeys().get(0)));
+        }
+        this.executor = Executors.newFixedThreadPool(parallelism);
+    }
+
+    /**
+     * Schedule signing of one container over {@code documentsToSign}.
+     *
+     * @param documentsToSign The documents to put into the container.
+     * @return The signed container, extended to the configured signature level.
+     */
+    public CompletableFuture<DSSDocument> submit(List<DSSDocument> documentsToSign) {
+        return CompletableFuture.supplyAsync(() -> sign(documentsToSign), executor);
+    }
+
+    /**
+     * Sign one container per collection and wait until all of them are finished.
+     *
+     * @param collections The documents of each container.
+     * @return The signed containers in the order of {@code collections}.
+     */
+    public List<DSSDocument> signAll(List<List<DSSDocument>> collections) {
+        List<CompletableFuture<DSSDocument>> futures = new ArrayList<>();
+        for (List<DSSDocument> collection : collections) {
+            futures.add(submit(collection));
+        }
+        List<DSSDocument> containers = new ArrayList<>();
+        for (CompletableFuture<DSSDocument> future : futures) {
+            containers.add(future.join());
+        }
+        return containers;
+    }
+
+    private DSSDocument sign(List<DSSDocument> documentsToSign) {
+        SigningKey signingKey;
+        try {
+            signingKey = signingKeys.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a signing token", e);
+        }
+        try {
+            DSSPrivateKeyEntry privateKey = signingKey.privateKey();
+
+            ASiCWithXAdESSignatureParameters parameters = new ASiCWithXAdESSignatureParameters();
+            parameters.setSignatureLevel(signatureLevel);
+            parameters.aSiC().setContainerType(ASiCContainerType.ASiC_E);
+            parameters.setDigestAlgorithm(digestAlgorithm);
+            parameters.setSigningCertificate(privateKey.getCertificate());
+            parameters.setCertificateChain(privateKey.getCertificateChain());
+
+            // the service itself is cheap, only the verifier and its caches are shared
+            ASiCWithXAdESService service = new ASiCWithXAdESService(certificateVerifier);
+            service.setTspSource(tspSource);
+
+            ToBeSigned dataToSign = service.getDataToSign(documentsToSign, parameters);
+            SignatureValue signatureValue = signingKey.token().sign(dataToSign, digestAlgorithm, privateKey);
+
+            // signing directly to the target level runs the -T, -LT and -LTA extensions in one go
+            return service.signDocument(documentsToSign, parameters, signatureValue);
+        } finally {
+            signingKeys.add(signingKey);
+        }
+    }
+
+    /**
+     * Shut down the worker threads and close all signing tokens.
+     */
+    @Override
+    public void close() {
+        // waits for containers that are still being signed
+        executor.close();
+        for (SigningKey signingKey : signingKeys) {
+            signingKey.token().close();
+        }
+    }
+
+    /**
+     * Collect all files below {@code folder}. The names of the documents are their paths relative to {@code folder},
+     * so that the folder structure is preserved inside the container.
+     *
+     * @param folder The root folder of the collection.
+     * @return The documents of the collection.
+     */
+    public static List<DSSDocument> collectDocuments(File folder) {
+        List<DSSDocument> documents = new ArrayList<>();
+        collectRecursive(folder, folder, documents);
+        return documents;
+    }
+
+    private static void collectRecursive(File root, File current, List<DSSDocument> docs) {
+        for (File file : current.listFiles()) {
+            if (file.isDirectory()) {
+                collectRecursive(root, file, docs);
+            } else {
+                // Preserve relative path inside ASiC container
+                String relativePath = root.toPath().relativize(file.toPath()).toString();
+
+                FileDocument doc = new FileDocument(file);
+                doc.setName(relativePath);
+
+                docs.add(doc);
+            }
+        }
+    }
+
+    private record SigningKey(SignatureTokenConnection token, DSSPrivateKeyEntry privateKey) {
+    }
+}
@@ -6,12 +6,9 @@ import eu.europa.esig.dss.enumerations.SignatureLevel;
 import eu.europa.esig.dss.enumerations.SignatureProfile;
 import eu.europa.esig.dss.extension.SignedDocumentExtender;
 import eu.europa.esig.dss.model.DSSDocument;
-import eu.europa.esig.dss.model.FileDocument;
 import eu.europa.esig.dss.model.SignatureValue;
 import eu.europa.esig.dss.model.ToBeSigned;
 import eu.europa.esig.dss.model.x509.CertificateToken;
-import eu.europa.esig.dss.service.crl.OnlineCRLSource;
-import eu.europa.esig.dss.service.ocsp.OnlineOCSPSource;
 import eu.europa.esig.dss.service.tsp.OnlineTSPSource;
 import eu.europa.esig.dss.spi.DSSUtils;
 import eu.europa.esig.dss.spi.validation.CommonCertificateVerifier;
@@ -25,7 +22,7 @@ import eu.europa.esig.dss.asic.xades.signature.ASiCWithXAdESService;
 
 import java.io.File;
 import java.security.KeyStore.PasswordProtection;
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.List;
 
 public class Playground {
@@ -49,12 +46,9 @@ public class Playground {
 
             DigestAlgorithm digestAlgorithm = DigestAlgorithm.SHA256;
 
-            // Create a list of documents to sign
-            List<DSSDocument> documentsToSign = new ArrayList<>();
-
             // Add all files from a folder (recursively)
             File folder = new File("src/test/resources/collection/");
-            collectRecursive(folder, folder, documentsToSign);
+            List<DSSDocument> documentsToSign = BatchContainerService.collectDocuments(folder);
 
             // Preparing parameters for the ASiC-E signature
             ASiCWithXAdESSignatureParameters parameters = new ASiCWithXAdESSignatureParameters();
@@ -107,9 +101,9 @@ public class Playground {
             // Extend the document, by specifying the target augmentation profile
             signedDocument = documentExtender.extendDocument(SignatureProfile.BASELINE_T);
 
-            // init revocation sources for CRL/OCSP requesting
-            certificateVerifier.setCrlSource(new OnlineCRLSource());
-            certificateVerifier.setOcspSource(new OnlineOCSPSource());
+            // init revocation sources for CRL/OCSP requesting, cached on disk between runs
+            new RevocationCache(new File("target/revocation-cache"), Duration.ofHours(12))
+                    .configure(certificateVerifier);
 
             // Trust anchors should be defined for revocation data requesting
             certificateVerifier.setTrustedCertSources(trustedCertificateSource);
@@ -133,22 +127,6 @@ public class Playground {
         }
     }
 
-    private static void collectRecursive(File root, File current, List<DSSDocument> docs) {
-        for (File file : current.listFiles()) {
-            if (file.isDirectory()) {
-                collectRecursive(root, file, docs);
-            } else {
-                // Preserve relative path inside ASiC container
-                String relativePath = root.toPath().relativize(file.toPath()).toString();
-
-                FileDocument doc = new FileDocument(file);
-                doc.setName(relativePath);
-
-                docs.add(doc);
-            }
-        }
-    }
-
     private static TSPSource getOnlineTSPSource() {
         final String tspServer = "https://zeitstempel.dfn.de/";
         return new OnlineTSPSource(tspServer);
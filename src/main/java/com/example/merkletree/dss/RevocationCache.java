@@ -0,0 +1,81 @@
+package com.example.merkletree.dss;
+
+import eu.europa.esig.dss.service.crl.OnlineCRLSource;
+import eu.europa.esig.dss.service.http.commons.CommonsDataLoader;
+import eu.europa.esig.dss.service.http.commons.FileCacheDataLoader;
+import eu.europa.esig.dss.service.http.commons.OCSPDataLoader;
+import eu.europa.esig.dss.service.ocsp.OnlineOCSPSource;
+import eu.europa.esig.dss.spi.client.http.DataLoader;
+import eu.europa.esig.dss.spi.client.http.IgnoreDataLoader;
+import eu.europa.esig.dss.spi.validation.CertificateVerifier;
+import eu.europa.esig.dss.spi.x509.aia.DefaultAIASource;
+
+import java.io.File;
+import java.time.Duration;
+
+/**
+ * Persistent local cache for CRL, OCSP and AIA responses. Responses are stored in a directory on disk and are only
+ * fetched again once the cached file is older than the configured expiration, so that many concurrent LTA
+ * extensions do not fetch the same revocation data over and over again.
+ */
+public class RevocationCache {
+    private final FileCacheDataLoader crlAndAiaLoader;
+    private final FileCacheDataLoader ocspLoader;
+
+    /**
+     * Create a cache that fetches missing or expired responses online.
+     *
+     * @param cacheDirectory The directory to store the cached responses in.
+     * @param expiration     The age after which a cached response is fetched again.
+     */
+    public RevocationCache(File cacheDirectory, Duration expiration) {
+        this(cacheDirectory, expiration, new CommonsDataLoader(), new OCSPDataLoader());
+    }
+
+    /**
+     * Create a cache that fetches missing or expired responses with the given data loaders.
+     *
+     * @param cacheDirectory The directory to store the cached responses in.
+     * @param expiration     The age after which a cached response is fetched again.
+     * @param crlAndAiaLoader The loader used for CRL and AIA requests on a cache miss.
+     * @param ocspLoader     The loader used for OCSP requests on a cache miss.
+     */
+    public RevocationCache(File cacheDirectory, Duration expiration, DataLoader crlAndAiaLoader,
+            DataLoader ocspLoader) {
+        this.crlAndAiaLoader = createFileCache(new File(cacheDirectory, "crl"), expiration, crlAndAiaLoader);
+        this.ocspLoader = createFileCache(new File(cacheDirectory, "ocsp"), expiration, ocspLoader);
+    }
+
+    /**
+     * Create a cache that only serves responses already present in {@code cacheDirectory} and never goes online.
+     * Useful for tests and for environments without network access.
+     *
+     * @param cacheDirectory The directory containing previously cached responses.
+     * @return The offline cache.
+     */
+    public static RevocationCache offline(File cacheDirectory) {
+        return new RevocationCache(cacheDirectory, Duration.ofMillis(Long.MAX_VALUE), new IgnoreDataLoader(),
+                new IgnoreDataLoader());
+    }
+
+    /**
+     * Let the {@code certificateVerifier} request CRL, OCSP and AIA data through this cache.
+     *
+     * @param certificateVerifier The verifier to configure.
+     */
+    public void configure(CertificateVerifier certificateVerifier) {
+        certificateVerifier.setCrlSource(new OnlineCRLSource(crlAndAiaLoader));
+        certificateVerifier.setOcspSource(new OnlineOCSPSource(ocspLoader));
+        certificateVerifier.setAIASource(new DefaultAIASource(crlAndAiaLoader));
+    }
+
+    private static FileCacheDataLoader createFileCache(File directory, Duration expiration, DataLoader loader) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Could not create cache directory " + directory);
+        }
+        FileCacheDataLoader fileCache = new FileCacheDataLoader(loader);
+        fileCache.setFileCacheDirectory(directory);
+        fileCache.setCacheExpirationTime(expiration.toMillis());
+        return fileCache;
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.merkletree.evidence;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.bouncycastle.tsp.TimeStampToken;
+
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.MerkleTreeNode;
+import com.example.merkletree.TimeStamping;
+import com.example.merkletree.TreeTraversal;
+import com.example.merkletree.composite.Composite;
+
+/**
+ * Writes XML evidence records according to RFC 6283 for every document of a {@link MerkleTreeNode 'merkle tree'}.
+ * All evidence records share a single timestamp over the root hash. Intermediate nodes of a tree with bounded fanout
+ * do not get an evidence record of their own. Each record is streamed directly to its own file,
+ * so the number of records is not limited by the available heap.
+ */
+public class XmlEvidenceRecordGenerator {
+    public static final String NAMESPACE = "urn:ietf:params:xml:ns:ers";
+    private static final String CANONICALIZATION_METHOD = "http://www.w3.org/TR/2001/REC-xml-c14n-20010315";
+
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+    private final HashAlgorithm hashAlgorithm;
+    private final Function<Composite, String> fileNames;
+
+    /**
+     * Create a generator naming the evidence record files by the pre-order index of their document in the tree, e.g.
+     * {@code 0.xml} for the root.
+     *
+     * @param hashAlgorithm The hash algorithm the trees were built with.
+     */
+    public XmlEvidenceRecordGenerator(HashAlgorithm hashAlgorithm) {
+        this(hashAlgorithm, null);
+    }
+
+    /**
+     * @param hashAlgorithm The hash algorithm the trees were built with.
+     * @param fileNames     Maps a document to the unique file name of its evidence record.
+     */
+    public XmlEvidenceRecordGenerator(HashAlgorithm hashAlgorithm, Function<Composite, String> fileNames) {
+        this.hashAlgorithm = hashAlgorithm;
+        this.fileNames = fileNames;
+    }
+
+    /**
+     * Obtain a timestamp for the root hash of {@code tree} and write the evidence records of all its documents.
+     *
+     * @param tree            The tree to write the evidence records for.
+     * @param outputDirectory The directory to write the evidence records to.
+     * @return The number of written evidence records.
+     * @throws IOException If an evidence record could not be written.
+     */
+    public int generate(MerkleTreeNode tree, Path outputDirectory) throws IOException {
+        TimeStampToken timeStamp = TimeStamping.timeStampRootHash(tree.getHash(), hashAlgorithm);
+        return generate(tree, timeStamp, outputDirectory);
+    }
+
+    /**
+     * Write the evidence records of all documents in {@code tree} in a single pass over the tree.
+     *
+     * @param tree            The tree to write the evidence records for.
+     * @param timeStamp       The timestamp over the root hash of {@code tree}.
+     * @param outputDirectory The directory to write the evidence records to.
+     * @return The number of written evidence records.
+     * @throws IOException If an evidence record could not be written.
+     */
+    public int generate(MerkleTreeNode tree, TimeStampToken timeStamp, Path outputDirectory) throws IOException {
+        Files.createDirectories(outputDirectory);
+        String encodedTimeStamp = Base64.getEncoder().encodeToString(timeStamp.getEncoded());
+
+        // the first sequence of a record holds the full partial hashtree of its document, while each following
+        // sequence only holds the siblings, the validator adds the hash calculated from the previous sequence itself
+        List<byte[][]> siblings = new ArrayList<>();
+        Deque<byte[][]> groups = new ArrayDeque<>();
+        int[] count = { 0 };
+
+        try {
+            TreeTraversal.walk(tree, MerkleTreeNode::getChildren, new TreeTraversal.Visitor<MerkleTreeNode>() {
+                @Override
+                public boolean enter(MerkleTreeNode node, int depth) {
+                    byte[][] group = node.getPartialHashtree().getValues();
+                    if (!groups.isEmpty()) {
+                        siblings.add(withoutHash(groups.peek(), node.getHash()));
+                    }
+                    // intermediate nodes of wide nodes only lie on the paths of the documents below them
+                    if (node.getComposite() != null) {
+                        try {
+                            write(node.getComposite(), group, siblings, encodedTimeStamp, outputDirectory, count[0]++);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    groups.push(group);
+                    return true;
+                }
+
+                @Override
+                public void exit(MerkleTreeNode node) {
+                    groups.pop();
+                    if (!groups.isEmpty()) {
+                        siblings.remove(siblings.size() - 1);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count[0];
+    }
+
+    private void write(Composite composite, byte[][] group, List<byte[][]> siblings, String encodedTimeStamp,
+            Path outputDirectory, int index) throws IOException {
+        String fileName = fileNames == null ? index + ".xml" : fileNames.apply(composite);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(outputDirectory.resolve(fileName)))) {
+            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.setDefaultNamespace(NAMESPACE);
+            writer.writeStartElement(NAMESPACE, "EvidenceRecord");
+            writer.writeDefaultNamespace(NAMESPACE);
+            writer.writeAttribute("Version", "1.0");
+
+            writer.writeStartElement(NAMESPACE, "ArchiveTimeStampSequence");
+            writer.writeStartElement(NAMESPACE, "ArchiveTimeStampChain");
+            writer.writeAttribute("Order", "1");
+
+            writer.writeEmptyElement(NAMESPACE, "DigestMethod");
+            writer.writeAttribute("Algorithm", hashAlgorithm.getXmlDigestMethod());
+            writer.writeEmptyElement(NAMESPACE, "CanonicalizationMethod");
+            writer.writeAttribute("Algorithm", CANONICALIZATION_METHOD);
+
+            writer.writeStartElement(NAMESPACE, "ArchiveTimeStamp");
+            writer.writeAttribute("Order", "1");
+
+            // the reduced hash tree starts with the document's own partial hashtree and ends below the root
+            writer.writeStartElement(NAMESPACE, "HashTree");
+            writeSequence(writer, 1, group);
+            for (int i = siblings.size() - 1; i >= 0; i--) {
+                writeSequence(writer, siblings.size() - i + 1, siblings.get(i));
+            }
+            writer.writeEndElement();
+
+            writer.writeStartElement(NAMESPACE, "TimeStamp");
+            writer.writeStartElement(NAMESPACE, "TimeStampToken");
+            writer.writeAttribute("Type", "RFC3161");
+            writer.writeCharacters(encodedTimeStamp);
+            writer.writeEndElement();
+            writer.writeEndElement();
+
+            writer.writeEndElement(); // ArchiveTimeStamp
+            writer.writeEndElement(); // ArchiveTimeStampChain
+            writer.writeEndElement(); // ArchiveTimeStampSequence
+            writer.writeEndElement(); // EvidenceRecord
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write evidence record " + fileName, e);
+        }
+    }
+
+    private static void writeSequence(XMLStreamWriter writer, int order, byte[][] hashes) throws XMLStreamException {
+        writer.writeStartElement(NAMESPACE, "Sequence");
+        writer.writeAttribute("Order", String.valueOf(order));
+        for (byte[] hash : hashes) {
+            writer.writeStartElement(NAMESPACE, "DigestValue");
+            writer.writeCharacters(Base64.getEncoder().encodeToString(hash));
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+    }
+
+    /**
+     * Remove one occurrence of {@code hash} from {@code hashes}.
+     */
+    private static byte[][] withoutHash(byte[][] hashes, byte[] hash) {
+        byte[][] result = new byte[hashes.length - 1][];
+        int j = 0;
+        boolean removed = false;
+        for (byte[] value : hashes) {
+            if (!removed && Arrays.equals(value, hash)) {
+                removed = true;
+            } else {
+                result[j++] = value;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,547 @@
+package com.example.merkletree.log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+import org.bouncycastle.asn1.tsp.ArchiveTimeStamp;
+import org.bouncycastle.asn1.tsp.PartialHashtree;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.tsp.TSPException;
+import org.bouncycastle.tsp.TimeStampToken;
+
+import com.example.merkletree.ContentHasher;
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.TimeStamping;
+import com.example.merkletree.composite.Composite;
+import com.example.merkletree.utils.CryptoUtils;
+import com.example.merkletree.utils.FileUtils;
+
+/**
+ * An append-only merkle hash tree over a growing list of documents, in the style of a certificate transparency log
+ * (RFC 9162). The tree over the first {@code n} documents has the shape defined by RFC 9162: the left subtree is the
+ * largest complete tree with less than {@code n} leaves. Leaves and nodes are hashed like in a
+ * {@link com.example.merkletree.MerkleTreeNode}: a leaf is the content hash of its document and a node is the hash
+ * of the sorted concatenation of its two children, so inclusion proofs are reduced hash trees of RFC 4998.
+ * <p>
+ * The hashes of all complete subtrees are stored on disk in tiles: level {@code l} holds the roots of the complete
+ * subtrees with {@code 2^l} leaves, split into files of {@value #TILE_WIDTH} hashes each. Complete tiles never change
+ * again. Appending a document writes at most one hash per level. Appended documents become durable with
+ * {@link #commit()}, which forces the tiles to disk and atomically replaces the checkpoint holding the committed size
+ * and root hash. Hashes written after the last checkpoint are discarded when the log is opened again, and opening
+ * fails if the root hash calculated from the tiles differs from the one of the checkpoint.
+ * <p>
+ * All methods are thread-safe.
+ */
+public class MerkleLog implements AutoCloseable {
+    static final int TILE_WIDTH = 256;
+    private static final String CHECKPOINT = "checkpoint";
+    private static final int MAX_LEVELS = Long.SIZE;
+
+    private final Path directory;
+    private final HashAlgorithm hashAlgorithm;
+    private final int hashLength;
+    private final FileChannel[] openTiles = new FileChannel[MAX_LEVELS];
+    private final long[] openTileIndexes = new long[MAX_LEVELS];
+    // roots of the complete subtrees the log currently consists of, peaks[l] is set if bit l of size is set
+    private final byte[][] peaks = new byte[MAX_LEVELS][];
+    private long size;
+
+    private MerkleLog(Path directory, HashAlgorithm hashAlgorithm, long size) {
+        this.directory = directory;
+        this.hashAlgorithm = hashAlgorithm;
+        this.hashLength = hashAlgorithm.getMessageDigest().getDigestLength();
+        this.size = size;
+    }
+
+    /**
+     * Open the log in {@code directory}, creating an empty log if the directory does not contain one.
+     *
+     * @param directory     The directory holding the tiles and the checkpoint.
+     * @param hashAlgorithm The hash algorithm of the log.
+     * @return The opened log, which has to be closed after use.
+     * @throws IOException If the log could not be read or is inconsistent with its checkpoint.
+     */
+    public static MerkleLog open(Path directory, HashAlgorithm hashAlgorithm) throws IOException {
+        Files.createDirectories(directory);
+        Path checkpointFile = directory.resolve(CHECKPOINT);
+        if (!Files.exists(checkpointFile)) {
+            return new MerkleLog(directory, hashAlgorithm, 0);
+        }
+        ByteBuffer checkpoint = ByteBuffer.wrap(Files.readAllBytes(checkpointFile));
+        MerkleLog log = new MerkleLog(directory, hashAlgorithm, checkpoint.getLong());
+        if (checkpoint.remaining() != log.hashLength) {
+            throw new IOException("The checkpoint of " + directory + " does not hold a " + hashAlgorithm + " root hash");
+        }
+        byte[] checkpointRoot = new byte[log.hashLength];
+        checkpoint.get(checkpointRoot);
+
+        log.truncateTiles();
+        try {
+            for (int level = 0; level < MAX_LEVELS; level++) {
+                if ((log.size >>> level & 1) == 1) {
+                    // the peak of a level is its last complete subtree
+                    log.peaks[level] = log.readNode(level, (log.size >>> level) - 1);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // only the peaks are read, a tile changed below them is found when a proof through it fails to verify
+        if (!Arrays.equals(checkpointRoot, log.getRootHash())) {
+            throw new IOException("The tiles of " + directory + " do not match the root hash of the checkpoint");
+        }
+        return log;
+    }
+
+    /**
+     * @return the number of documents in the log, including the ones not committed yet.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Append the content hash of {@code document}.
+     *
+     * @param document The appended document.
+     * @return The index of the document in the log.
+     */
+    public long append(Composite document) {
+        return append(ContentHasher.DEFAULT.hash(document, hashAlgorithm));
+    }
+
+    /**
+     * Append a leaf hash. Writes the leaf and the roots of all subtrees completed by it, at most one hash per level.
+     *
+     * @param leafHash The content hash of the appended document.
+     * @return The index of the document in the log.
+     */
+    public synchronized long append(byte[] leafHash) {
+        if (leafHash.length != hashLength) {
+            throw new IllegalArgumentException("Expected a hash of " + hashLength + " bytes");
+        }
+        long index = size;
+        byte[] hash = leafHash;
+        int level = 0;
+        writeNode(level, index, hash);
+        // every set low bit of the index is a complete left sibling waiting for this node
+        for (long position = index; (position & 1) == 1; position >>>= 1) {
+            hash = combine(peaks[level], hash);
+            peaks[level] = null;
+            level++;
+            writeNode(level, position >>> 1, hash);
+        }
+        peaks[level] = hash;
+        size++;
+        return index;
+    }
+
+    /**
+     * Make all appended documents durable.
+     *
+     * @throws IOException If the tiles or the checkpoint could not be written.
+     */
+    public synchronized void commit() throws IOException {
+        for (FileChannel tile : openTiles) {
+            if (tile != null) {
+                tile.force(false);
+            }
+        }
+        ByteBuffer checkpoint = ByteBuffer.allocate(8 + hashLength).putLong(size).put(getRootHash());
+        writeAtomically(directory.resolve(CHECKPOINT), checkpoint.array());
+    }
+
+    /**
+     * @return the root hash over all documents in the log, calculated from the peaks without reading from disk.
+     */
+    public synchronized byte[] getRootHash() {
+        byte[] root = null;
+        for (byte[] peak : peaks) {
+            if (peak != null) {
+                root = root == null ? peak : combine(peak, root);
+            }
+        }
+        return root == null ? CryptoUtils.hash(new byte[0], hashAlgorithm) : root;
+    }
+
+    /**
+     * @param treeSize The number of documents at the time of the root hash.
+     * @return the root hash over the first {@code treeSize} documents.
+     */
+    public synchronized byte[] getRootHash(long treeSize) {
+        checkSize(treeSize);
+        return treeSize == 0 ? CryptoUtils.hash(new byte[0], hashAlgorithm) : subtreeHash(0, treeSize);
+    }
+
+    /**
+     * @param index The index of the document.
+     * @return the reduced hash tree from the document up to the current root, see
+     *         {@link #getInclusionProof(long, long)}.
+     */
+    public synchronized PartialHashtree[] getInclusionProof(long index) {
+        return getInclusionProof(index, size);
+    }
+
+    /**
+     * Create the reduced hash tree from a document up to the root over the first {@code treeSize} documents, e.g. a
+     * root that was timestamped earlier. The first partial hashtree contains the leaf hash, each following one
+     * contains the hash calculated from the previous one, like
+     * {@link com.example.merkletree.MerkleTreeNode#getPathFromAncestor(byte[])}.
+     *
+     * @param index    The index of the document.
+     * @param treeSize The number of documents the root was calculated over.
+     * @return The reduced hash tree with one partial hashtree per level.
+     */
+    public synchronized PartialHashtree[] getInclusionProof(long index, long treeSize) {
+        checkSize(treeSize);
+        if (index < 0 || index >= treeSize) {
+            throw new IllegalArgumentException("No document " + index + " in a tree of size " + treeSize);
+        }
+        List<byte[]> siblings = new ArrayList<>();
+        collectSiblings(index, 0, treeSize, siblings);
+
+        byte[] hash = readNode(0, index);
+        if (siblings.isEmpty()) {
+            return new PartialHashtree[] { new PartialHashtree(hash) };
+        }
+        PartialHashtree[] path = new PartialHashtree[siblings.size()];
+        for (int i = 0; i < siblings.size(); i++) {
+            path[i] = new PartialHashtree(new byte[][] { hash, siblings.get(i) });
+            hash = combine(hash, siblings.get(i));
+        }
+        return path;
+    }
+
+    /**
+     * Create a consistency proof according to RFC 9162, section 2.1.4, showing that the tree over the first
+     * {@code first} documents is a prefix of the tree over the first {@code second} documents.
+     *
+     * @param first  The size of the older tree, at least 1.
+     * @param second The size of the newer tree.
+     * @return The hashes of the proof.
+     */
+    public synchronized List<byte[]> getConsistencyProof(long first, long second) {
+        checkSize(second);
+        if (first < 1 || first > second) {
+            throw new IllegalArgumentException("Cannot prove consistency of size " + first + " with size " + second);
+        }
+        List<byte[]> proof = new ArrayList<>();
+        collectConsistency(first, 0, second, true, proof);
+        return proof;
+    }
+
+    /**
+     * Verify a consistency proof according to RFC 9162, section 2.1.4.2. The nodes hash their children in sorted
+     * order, so the verification does not need to distinguish left and right children.
+     *
+     * @param first         The size of the older tree.
+     * @param second        The size of the newer tree.
+     * @param firstRoot     The root hash of the older tree.
+     * @param secondRoot    The root hash of the newer tree.
+     * @param proof         The proof created by {@link #getConsistencyProof(long, long)}.
+     * @param hashAlgorithm The hash algorithm of the log.
+     * @return {@code true} if the older tree is a prefix of the newer tree.
+     */
+    public static boolean verifyConsistency(long first, long second, byte[] firstRoot, byte[] secondRoot,
+            List<byte[]> proof, HashAlgorithm hashAlgorithm) {
+        if (first < 1 || first > second) {
+            return false;
+        }
+        if (first == second) {
+            return proof.isEmpty() && Arrays.equals(firstRoot, secondRoot);
+        }
+        List<byte[]> path = new ArrayList<>(proof);
+        if (Long.bitCount(first) == 1) {
+            path.add(0, firstRoot);
+        }
+        if (path.isEmpty()) {
+            return false;
+        }
+
+        long firstNode = first - 1;
+        long secondNode = second - 1;
+        while ((firstNode & 1) == 1) {
+            firstNode >>>= 1;
+            secondNode >>>= 1;
+        }
+        byte[] firstHash = path.get(0);
+        byte[] secondHash = path.get(0);
+        for (byte[] hash : path.subList(1, path.size())) {
+            if (secondNode == 0) {
+                return false;
+            }
+            if ((firstNode & 1) == 1 || firstNode == secondNode) {
+                firstHash = combine(hash, firstHash, hashAlgorithm);
+                secondHash = combine(hash, secondHash, hashAlgorithm);
+                while ((firstNode & 1) == 0 && firstNode != 0) {
+                    firstNode >>>= 1;
+                    secondNode >>>= 1;
+                }
+            } else {
+                secondHash = combine(secondHash, hash, hashAlgorithm);
+            }
+            firstNode >>>= 1;
+            secondNode >>>= 1;
+        }
+        return secondNode == 0 && Arrays.equals(firstHash, firstRoot) && Arrays.equals(secondHash, secondRoot);
+    }
+
+    /**
+     * Commit the log and obtain a timestamp for its current root hash from {@link TimeStamping}.
+     *
+     * @return The timestamp of the log head.
+     * @throws IOException If the log or the timestamp could not be written.
+     */
+    public TimeStampToken timeStampHead() throws IOException {
+        return timeStampHead(TimeStamping::timeStampRootHash);
+    }
+
+    /**
+     * Commit the log, obtain a timestamp for its current root hash and store it next to the tiles, so that archive
+     * timestamps for all documents up to the current size can be {@link #createArchiveTimeStamp(long, long)
+     * 'created'} later on.
+     *
+     * @param timeStamping Obtains a timestamp for a root hash.
+     * @return The timestamp of the log head.
+     * @throws IOException If the log or the timestamp could not be written.
+     */
+    public synchronized TimeStampToken timeStampHead(BiFunction<byte[], HashAlgorithm, TimeStampToken> timeStamping)
+            throws IOException {
+        commit();
+        TimeStampToken timeStamp = timeStamping.apply(getRootHash(), hashAlgorithm);
+        Files.createDirectories(directory.resolve("timestamps"));
+        writeAtomically(timeStampFile(size), timeStamp.getEncoded());
+        return timeStamp;
+    }
+
+    /**
+     * @param treeSize The size of the log when the timestamp was obtained.
+     * @return the stored timestamp of the log head at {@code treeSize}, or {@code null} if there is none.
+     * @throws IOException If the timestamp could not be read.
+     */
+    public TimeStampToken getHeadTimeStamp(long treeSize) throws IOException {
+        Path file = timeStampFile(treeSize);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return new TimeStampToken(new CMSSignedData(Files.readAllBytes(file)));
+        } catch (CMSException | TSPException e) {
+            throw new IOException("Invalid timestamp " + file, e);
+        }
+    }
+
+    /**
+     * Create the archive timestamp of RFC 4998 for a document from the stored timestamp of a later log head.
+     *
+     * @param index    The index of the document.
+     * @param treeSize The size of a timestamped log head, see {@link #timeStampHead()}.
+     * @return The archive timestamp.
+     * @throws IOException If there is no timestamp for the log head.
+     */
+    public ArchiveTimeStamp createArchiveTimeStamp(long index, long treeSize) throws IOException {
+        TimeStampToken timeStamp = getHeadTimeStamp(treeSize);
+        if (timeStamp == null) {
+            throw new IOException("The log head at size " + treeSize + " was not timestamped");
+        }
+        return TimeStamping.createArchiveTimeStamp(getInclusionProof(index, treeSize), timeStamp, hashAlgorithm);
+    }
+
+    /**
+     * Commit all appended documents and close the tiles.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        commit();
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            if (openTiles[level] != null) {
+                openTiles[level].close();
+                openTiles[level] = null;
+            }
+        }
+    }
+
+    /**
+     * RFC 9162 PATH(m, D[start:start + n]), the siblings are collected from the leaf upwards.
+     */
+    private void collectSiblings(long index, long start, long n, List<byte[]> siblings) {
+        if (n == 1) {
+            return;
+        }
+        long k = Long.highestOneBit(n - 1);
+        if (index - start < k) {
+            collectSiblings(index, start, k, siblings);
+            siblings.add(subtreeHash(start + k, n - k));
+        } else {
+            collectSiblings(index, start + k, n - k, siblings);
+            siblings.add(subtreeHash(start, k));
+        }
+    }
+
+    /**
+     * RFC 9162 SUBPROOF(m, D[start:start + n], b).
+     */
+    private void collectConsistency(long m, long start, long n, boolean complete, List<byte[]> proof) {
+        if (m == n) {
+            if (!complete) {
+                proof.add(subtreeHash(start, n));
+            }
+            return;
+        }
+        long k = Long.highestOneBit(n - 1);
+        if (m <= k) {
+            collectConsistency(m, start, k, complete, proof);
+            proof.add(subtreeHash(start + k, n - k));
+        } else {
+            collectConsistency(m - k, start + k, n - k, false, proof);
+            proof.add(subtreeHash(start, k));
+        }
+    }
+
+    /**
+     * The root hash over the documents {@code [start, start + n)}. Complete subtrees are read from their tile, all
+     * other ranges are split like RFC 9162 does, which takes at most one read per level.
+     */
+    private byte[] subtreeHash(long start, long n) {
+        if (Long.bitCount(n) == 1 && start % n == 0) {
+            int level = Long.numberOfTrailingZeros(n);
+            return readNode(level, start >>> level);
+        }
+        long k = Long.highestOneBit(n - 1);
+        return combine(subtreeHash(start, k), subtreeHash(start + k, n - k));
+    }
+
+    private byte[] combine(byte[] left, byte[] right) {
+        return combine(left, right, hashAlgorithm);
+    }
+
+    private static byte[] combine(byte[] left, byte[] right, HashAlgorithm hashAlgorithm) {
+        return CryptoUtils.hashGroup(new byte[][] { left, right }, hashAlgorithm);
+    }
+
+    private void checkSize(long treeSize) {
+        if (treeSize < 0 || treeSize > size) {
+            throw new IllegalArgumentException("The log only contains " + size + " documents");
+        }
+    }
+
+    private void writeNode(int level, long index, byte[] hash) {
+        long tileIndex = index / TILE_WIDTH;
+        try {
+            if (openTiles[level] == null || openTileIndexes[level] != tileIndex) {
+                if (openTiles[level] != null) {
+                    // a tile is complete once the next one is started
+                    openTiles[level].force(false);
+                    openTiles[level].close();
+                }
+                Path tile = tileFile(level, tileIndex);
+                Files.createDirectories(tile.getParent());
+                openTiles[level] = FileChannel.open(tile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.READ);
+                openTileIndexes[level] = tileIndex;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(hash);
+            long position = index % TILE_WIDTH * hashLength;
+            while (buffer.hasRemaining()) {
+                position += openTiles[level].write(buffer, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to tile " + level + "/" + tileIndex, e);
+        }
+    }
+
+    private byte[] readNode(int level, long index) {
+        long tileIndex = index / TILE_WIDTH;
+        ByteBuffer buffer = ByteBuffer.allocate(hashLength);
+        long position = index % TILE_WIDTH * hashLength;
+        try {
+            if (openTiles[level] != null && openTileIndexes[level] == tileIndex) {
+                readFully(openTiles[level], buffer, position);
+            } else {
+                try (FileChannel tile = FileChannel.open(tileFile(level, tileIndex), StandardOpenOption.READ)) {
+                    readFully(tile, buffer, position);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read from tile " + level + "/" + tileIndex, e);
+        }
+        return buffer.array();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of tile");
+            }
+        }
+    }
+
+    /**
+     * Remove all hashes written after the checkpoint, e.g. by appends that were not committed before a crash.
+     */
+    private void truncateTiles() throws IOException {
+        Path tiles = directory.resolve("tile");
+        if (!Files.isDirectory(tiles)) {
+            return;
+        }
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            Path levelDirectory = tiles.resolve(String.valueOf(level));
+            if (!Files.isDirectory(levelDirectory)) {
+                continue;
+            }
+            long nodes = size >>> level;
+            long tileCount = (nodes + TILE_WIDTH - 1) / TILE_WIDTH;
+            try (Stream<Path> files = Files.list(levelDirectory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    long tileIndex = Long.parseLong(file.getFileName().toString());
+                    long expectedLength = Math.min(TILE_WIDTH, nodes - tileIndex * TILE_WIDTH) * hashLength;
+                    if (tileIndex >= tileCount) {
+                        Files.delete(file);
+                    } else if (Files.size(file) < expectedLength) {
+                        throw new IOException("Tile " + level + "/" + tileIndex + " is shorter than the checkpoint");
+                    } else if (Files.size(file) > expectedLength) {
+                        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                            channel.truncate(expectedLength);
+                            channel.force(true);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private Path tileFile(int level, long tileIndex) {
+        return directory.resolve("tile").resolve(String.valueOf(level)).resolve(String.valueOf(tileIndex));
+    }
+
+    private Path timeStampFile(long treeSize) {
+        return directory.resolve("timestamps").resolve(treeSize + ".tst");
+    }
+
+    private static void writeAtomically(Path file, byte[] content) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        FileUtils.syncDirectory(file.toAbsolutePath().getParent());
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.merkletree.proof;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.bouncycastle.asn1.ASN1Boolean;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Object;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.MerkleTreeNode;
+import com.example.merkletree.TreeTraversal;
+import com.example.merkletree.composite.Composite;
+import com.example.merkletree.utils.CryptoUtils;
+
+/**
+ * A proof that many documents are contained in the tree with a given root hash. Instead of one reduced hash tree per
+ * document, the proof contains the part of the tree that lies on the paths from the documents to the root, so every
+ * hash value that cannot be calculated is included exactly once and the verifier calculates the hash of every node on
+ * these paths exactly once.
+ * <p>
+ * The nodes are listed in post-order. Each node lists the hash values of its group that are not calculated by the
+ * verifier (content hash and children off the paths) and the number of its children on the paths, whose hashes are
+ * the most recently calculated ones. The content hash of a node is the last of its hash values, so that the
+ * verifier knows which hash values belong to the proven documents.
+ *
+ * <pre>
+ * MultiProof ::= SEQUENCE {
+ *     digestAlgorithm AlgorithmIdentifier,
+ *     nodes           SEQUENCE OF ProofNode }
+ *
+ * ProofNode ::= SEQUENCE {
+ *     hashes          SEQUENCE OF OCTET STRING,
+ *     calculated      INTEGER,
+ *     document        BOOLEAN DEFAULT FALSE }
+ * </pre>
+ */
+public class MultiProof extends ASN1Object {
+    private final AlgorithmIdentifier digestAlgorithm;
+    private final List<ProofNode> nodes;
+
+    private MultiProof(AlgorithmIdentifier digestAlgorithm, List<ProofNode> nodes) {
+        this.digestAlgorithm = digestAlgorithm;
+        this.nodes = nodes;
+    }
+
+    private MultiProof(ASN1Sequence sequence) {
+        if (sequence.size() != 2) {
+            throw new IllegalArgumentException("Bad sequence size: " + sequence.size());
+        }
+        this.digestAlgorithm = AlgorithmIdentifier.getInstance(sequence.getObjectAt(0));
+        ASN1Sequence nodeSequence = ASN1Sequence.getInstance(sequence.getObjectAt(1));
+        this.nodes = new ArrayList<>(nodeSequence.size());
+        for (int i = 0; i < nodeSequence.size(); i++) {
+            nodes.add(ProofNode.getInstance(nodeSequence.getObjectAt(i)));
+        }
+    }
+
+    public static MultiProof getInstance(Object object) {
+        if (object instanceof MultiProof multiProof) {
+            return multiProof;
+        } else if (object != null) {
+            return new MultiProof(ASN1Sequence.getInstance(object));
+        }
+        return null;
+    }
+
+    /**
+     * Create the proof for all nodes of {@code tree} that were built on one of {@code documents}. The tree is walked
+     * once, independent of the number of documents.
+     *
+     * @param tree          The tree containing the documents.
+     * @param documents     The documents to prove.
+     * @param hashAlgorithm The hash algorithm the tree was built with.
+     * @return The proof, covering all documents found in the tree.
+     */
+    public static MultiProof create(MerkleTreeNode tree, Collection<? extends Composite> documents,
+            HashAlgorithm hashAlgorithm) {
+        Set<Composite> searched = new HashSet<>(documents);
+        Set<MerkleTreeNode> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<MerkleTreeNode> onPath = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        // mark the documents and all their ancestors, stopping at the first ancestor marked by another document
+        List<MerkleTreeNode> path = new ArrayList<>();
+        TreeTraversal.walk(tree, MerkleTreeNode::getChildren, new TreeTraversal.Visitor<MerkleTreeNode>() {
+            @Override
+            public boolean enter(MerkleTreeNode node, int depth) {
+                path.add(node);
+                if (node.getComposite() != null && searched.contains(node.getComposite())) {
+                    found.add(node);
+                    int i = path.size() - 1;
+                    while (i >= 0 && onPath.add(path.get(i))) {
+                        i--;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public void exit(MerkleTreeNode node) {
+                path.remove(path.size() - 1);
+            }
+        });
+
+        List<ProofNode> nodes = new ArrayList<>();
+        if (!onPath.isEmpty()) {
+            TreeTraversal.Visitor<MerkleTreeNode> writer = new TreeTraversal.Visitor<MerkleTreeNode>() {
+                @Override
+                public boolean enter(MerkleTreeNode node, int depth) {
+                    return true;
+                }
+
+                @Override
+                public void exit(MerkleTreeNode node) {
+                    List<byte[]> hashes = new ArrayList<>();
+                    int calculated = 0;
+                    for (MerkleTreeNode child : node.getChildren()) {
+                        if (onPath.contains(child)) {
+                            calculated++;
+                        } else {
+                            hashes.add(child.getHash());
+                        }
+                    }
+                    if (node.getContentHash() != null) {
+                        hashes.add(node.getContentHash());
+                    }
+                    nodes.add(new ProofNode(hashes.toArray(new byte[0][]), calculated, found.contains(node)));
+                }
+            };
+            TreeTraversal.walk(tree, node -> onPathChildren(node, onPath), writer);
+        }
+        return new MultiProof(new AlgorithmIdentifier(hashAlgorithm.getOid()), nodes);
+    }
+
+    private static List<MerkleTreeNode> onPathChildren(MerkleTreeNode node, Set<MerkleTreeNode> onPath) {
+        List<MerkleTreeNode> children = new ArrayList<>();
+        for (MerkleTreeNode child : node.getChildren()) {
+            if (onPath.contains(child)) {
+                children.add(child);
+            }
+        }
+        return children;
+    }
+
+    public AlgorithmIdentifier getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    /**
+     * @return the number of nodes in the proof.
+     */
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Calculate the root hash from the proof, hashing every node once.
+     *
+     * @return The root hash, or {@code null} if the proof is malformed.
+     */
+    public byte[] calculateRootHash() {
+        return calculate(null);
+    }
+
+    /**
+     * Verify that all {@code documentHashes} are the content hashes of documents in the tree with {@code rootHash}.
+     *
+     * @param documentHashes The content hashes of the documents.
+     * @param rootHash       The root hash, e.g. taken from a timestamp.
+     * @return {@code true} if the proof leads to the root hash and contains all documents.
+     */
+    public boolean verify(Collection<byte[]> documentHashes, byte[] rootHash) {
+        Set<ByteBuffer> provenDocuments = new HashSet<>();
+        byte[] calculatedRoot = calculate(provenDocuments);
+        if (calculatedRoot == null || !ByteBuffer.wrap(calculatedRoot).equals(ByteBuffer.wrap(rootHash))) {
+            return false;
+        }
+        for (byte[] documentHash : documentHashes) {
+            if (!provenDocuments.contains(ByteBuffer.wrap(documentHash))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Run the proof as a stack machine: each node takes the hashes calculated for its children from the stack and
+     * pushes its own hash.
+     *
+     * @param documentHashes Collects the hash values of the document nodes, if not {@code null}.
+     */
+    private byte[] calculate(Set<ByteBuffer> documentHashes) {
+        HashAlgorithm hashAlgorithm = HashAlgorithm.fromAlgorithmIdentifier(digestAlgorithm);
+        if (hashAlgorithm == null || nodes.isEmpty()) {
+            return null;
+        }
+        Deque<byte[]> stack = new ArrayDeque<>();
+        for (ProofNode node : nodes) {
+            if (node.calculated < 0 || node.calculated > stack.size()
+                    || node.hashes.length + node.calculated == 0) {
+                return null;
+            }
+            byte[][] group = new byte[node.hashes.length + node.calculated][];
+            System.arraycopy(node.hashes, 0, group, 0, node.hashes.length);
+            for (int i = node.hashes.length; i < group.length; i++) {
+                group[i] = stack.pop();
+            }
+            if (node.document && documentHashes != null && node.hashes.length > 0) {
+                documentHashes.add(ByteBuffer.wrap(node.hashes[node.hashes.length - 1]));
+            }
+            stack.push(CryptoUtils.hashGroup(group, hashAlgorithm));
+        }
+        return stack.size() == 1 ? stack.pop() : null;
+    }
+
+    @Override
+    public ASN1Primitive toASN1Primitive() {
+        ASN1EncodableVector nodeVector = new ASN1EncodableVector(nodes.size());
+        for (ProofNode node : nodes) {
+            nodeVector.add(node);
+        }
+        ASN1EncodableVector vector = new ASN1EncodableVector(2);
+        vector.add(digestAlgorithm);
+        vector.add(new DERSequence(nodeVector));
+        return new DERSequence(vector);
+    }
+
+    private static class ProofNode extends ASN1Object {
+        private final byte[][] hashes;
+        private final int calculated;
+        private final boolean document;
+
+        ProofNode(byte[][] hashes, int calculated, boolean document) {
+            this.hashes = hashes;
+            this.calculated = calculated;
+            this.document = document;
+        }
+
+        static ProofNode getInstance(Object object) {
+            ASN1Sequence sequence = ASN1Sequence.getInstance(object);
+            if (sequence.size() < 2 || sequence.size() > 3) {
+                throw new IllegalArgumentException("Bad sequence size: " + sequence.size());
+            }
+            ASN1Sequence hashSequence = ASN1Sequence.getInstance(sequence.getObjectAt(0));
+            byte[][] hashes = new byte[hashSequence.size()][];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = ASN1OctetString.getInstance(hashSequence.getObjectAt(i)).getOctets();
+            }
+            int calculated = ASN1Integer.getInstance(sequence.getObjectAt(1)).intValueExact();
+            boolean document = sequence.size() == 3 && ASN1Boolean.getInstance(sequence.getObjectAt(2)).isTrue();
+            return new ProofNode(hashes, calculated, document);
+        }
+
+        @Override
+        public ASN1Primitive toASN1Primitive() {
+            ASN1EncodableVector hashVector = new ASN1EncodableVector(hashes.length);
+            for (byte[] hash : hashes) {
+                hashVector.add(new DEROctetString(hash));
+            }
+            ASN1EncodableVector vector = new ASN1EncodableVector(3);
+            vector.add(new DERSequence(hashVector));
+            vector.add(new ASN1Integer(calculated));
+            // DEFAULT FALSE is omitted in DER
+            if (document) {
+                vector.add(ASN1Boolean.TRUE);
+            }
+            return new DERSequence(vector);
+        }
+    }
+}
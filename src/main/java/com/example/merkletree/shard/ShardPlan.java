@@ -0,0 +1,100 @@
+package com.example.merkletree.shard;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import com.example.merkletree.HashAlgorithm;
+
+/**
+ * The split of a collection into shards, created by {@link ShardedTreeBuilder#plan(com.example.merkletree.composite.FileComposite)}.
+ * Directories too large for one shard are split: the coordinator builds their nodes itself, and their children are
+ * divided into {@link Shard 'shards'} of consecutive children, or split again. Each shard is built by one worker into
+ * one tree file.
+ * <p>
+ * The plan only contains paths relative to the collection root and tree file names relative to an output directory,
+ * so the same plan can be run by workers that see the collection and the output directory under other paths.
+ */
+public class ShardPlan {
+    private final HashAlgorithm hashAlgorithm;
+    private final Set<String> splitDirectories;
+    private final List<Shard> shards;
+    private final List<List<Shard>> assignments;
+
+    ShardPlan(HashAlgorithm hashAlgorithm, Set<String> splitDirectories, List<Shard> shards,
+            List<List<Shard>> assignments) {
+        this.hashAlgorithm = hashAlgorithm;
+        this.splitDirectories = Set.copyOf(splitDirectories);
+        this.shards = List.copyOf(shards);
+        this.assignments = assignments.stream().map(List::copyOf).toList();
+    }
+
+    /**
+     * Consecutive children of one directory, whose trees are built by one worker and written to one tree file.
+     *
+     * @param directory The path of the directory relative to the collection root, empty for the root.
+     * @param from      The index of the first child, inclusive.
+     * @param to        The index of the last child, exclusive.
+     * @param treeFile  The name of the tree file, relative to the output directory.
+     * @param weight    The estimated cost of building the shard, its size in bytes plus a fixed cost per file.
+     */
+    public record Shard(String directory, int from, int to, String treeFile, long weight) {
+    }
+
+    public HashAlgorithm getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    /**
+     * @return all shards, each child of a split directory that is not split itself is in exactly one of them.
+     */
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    /**
+     * @param directory The path of a directory relative to the collection root.
+     * @return {@code true} if the node of the directory is built by the coordinator instead of a worker.
+     */
+    public boolean isSplit(String directory) {
+        return splitDirectories.contains(directory);
+    }
+
+    /**
+     * @return the number of workers that got at least one shard.
+     */
+    public int getWorkerCount() {
+        return assignments.size();
+    }
+
+    /**
+     * @param worker The index of the worker.
+     * @return the shards assigned to the worker.
+     */
+    public List<Shard> getAssignment(int worker) {
+        return assignments.get(worker);
+    }
+
+    /**
+     * The {@link ShardWorker} arguments of one worker.
+     *
+     * @param worker          The index of the worker.
+     * @param collectionRoot  The collection root as seen by the worker.
+     * @param outputDirectory The directory the worker writes its tree files to, as seen by the worker.
+     * @return The arguments.
+     */
+    public List<String> workerArguments(int worker, Path collectionRoot, Path outputDirectory) {
+        List<String> arguments = new ArrayList<>();
+        arguments.add(collectionRoot.toString());
+        arguments.add(outputDirectory.toString());
+        arguments.add(hashAlgorithm.name());
+        for (Shard shard : assignments.get(worker)) {
+            arguments.add(shard.directory().isEmpty() ? ShardWorker.ROOT_DIRECTORY : shard.directory());
+            arguments.add(Integer.toString(shard.from()));
+            arguments.add(Integer.toString(shard.to()));
+            arguments.add(shard.treeFile());
+        }
+        return arguments;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.merkletree.shard;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.HashTreeNode;
+import com.example.merkletree.MerkleTreeNode;
+import com.example.merkletree.composite.Composite;
+import com.example.merkletree.composite.FileComposite;
+import com.example.merkletree.store.MerkleTreeFile;
+import com.example.merkletree.utils.CryptoUtils;
+
+/**
+ * Entry point of a shard worker process. Builds the merkle trees of the {@link ShardPlan.Shard 'shards'} assigned to
+ * it and writes each shard to a {@link MerkleTreeFile}, which the {@link ShardedTreeBuilder 'coordinator'} merges
+ * afterwards. All arguments but the collection root and the output directory are relative to them, so workers can run
+ * on any machine that sees the collection, see {@link ShardPlan#workerArguments(int, Path, Path)}.
+ * <p>
+ * Usage: {@code ShardWorker <collection root> <output directory> <hash algorithm> <directory> <from> <to>
+ * <tree file> [<directory> <from> <to> <tree file> ...]}, where the directory {@value #ROOT_DIRECTORY} is the
+ * collection root.
+ */
+public class ShardWorker {
+    static final String ROOT_DIRECTORY = ".";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 7 || (args.length - 3) % 4 != 0) {
+            System.err.println("Usage: ShardWorker <collection root> <output directory> <hash algorithm> "
+                    + "<directory> <from> <to> <tree file> [<directory> <from> <to> <tree file> ...]");
+            System.exit(2);
+        }
+        FileComposite collection = new FileComposite(Path.of(args[0]));
+        Path outputDirectory = Path.of(args[1]);
+        HashAlgorithm hashAlgorithm = HashAlgorithm.valueOf(args[2]);
+        for (int i = 3; i < args.length; i += 4) {
+            FileComposite directory = ROOT_DIRECTORY.equals(args[i]) ? collection : collection.resolve(args[i]);
+            buildShard(directory, Integer.parseInt(args[i + 1]), Integer.parseInt(args[i + 2]), hashAlgorithm,
+                    outputDirectory.resolve(args[i + 3]));
+        }
+    }
+
+    /**
+     * Build the trees over the children {@code from} (inclusive) to {@code to} (exclusive) of {@code directory} and
+     * write them to {@code outputFile}. The root of the written tree only groups these trees: its id is the id of
+     * {@code directory}, it has no content hash and its hash is calculated over the children only.
+     *
+     * @param directory     The directory containing the shard.
+     * @param from          The index of the first child of the shard.
+     * @param to            The index after the last child of the shard.
+     * @param hashAlgorithm The hash algorithm to use.
+     * @param outputFile    The file to write the shard tree to.
+     * @throws IOException If the shard tree could not be written.
+     */
+    public static void buildShard(FileComposite directory, int from, int to, HashAlgorithm hashAlgorithm,
+            Path outputFile) throws IOException {
+        List<Composite> children = directory.getChildren();
+        if (from < 0 || to > children.size() || from >= to) {
+            throw new IllegalArgumentException("No children " + from + " to " + to + " in " + directory);
+        }
+        List<HashTreeNode> trees = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            trees.add(new MerkleTreeNode(children.get(i), hashAlgorithm));
+        }
+        MerkleTreeFile.write(new ShardRoot(directory.getId(), trees, hashAlgorithm), outputFile);
+    }
+
+    private static class ShardRoot implements HashTreeNode {
+        private final String id;
+        private final List<HashTreeNode> children;
+        private final byte[] hash;
+
+        ShardRoot(String id, List<HashTreeNode> children, HashAlgorithm hashAlgorithm) {
+            this.id = id;
+            this.children = children;
+            byte[][] hashes = new byte[children.size()][];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = children.get(i).getHash();
+            }
+            this.hash = CryptoUtils.hashGroup(hashes, hashAlgorithm);
+        }
+
+        @Override
+        public byte[] getHash() {
+            return hash;
+        }
+
+        @Override
+        public byte[] getContentHash() {
+            return null;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public int getChildCount() {
+            return children.size();
+        }
+
+        @Override
+        public HashTreeNode getChild(int index) {
+            return children.get(index);
+        }
+    }
+}
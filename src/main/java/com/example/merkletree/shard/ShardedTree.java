@@ -0,0 +1,264 @@
+package com.example.merkletree.shard;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.bouncycastle.asn1.tsp.PartialHashtree;
+
+import com.example.merkletree.ContentHasher;
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.HashTreeNode;
+import com.example.merkletree.TreeTraversal;
+import com.example.merkletree.composite.Composite;
+import com.example.merkletree.composite.FileComposite;
+import com.example.merkletree.shard.ShardPlan.Shard;
+import com.example.merkletree.store.MerkleTreeFile;
+import com.example.merkletree.utils.CryptoUtils;
+
+/**
+ * The root of a merkle tree whose subtrees were built by {@link ShardWorker 'shard workers'}. The nodes of the split
+ * directories of the {@link ShardPlan} are calculated by the coordinator, all other nodes are read lazily from the
+ * shard tree files.
+ * <p>
+ * Every node of the shards must have been built with unbounded fanout, as in {@link ShardWorker}: the intermediate
+ * nodes of a bounded fanout have neither an id nor a content hash, so the shards could not be placed in the tree.
+ */
+public class ShardedTree implements HashTreeNode, AutoCloseable {
+    private final HashTreeNode root;
+    private final List<MerkleTreeFile> shardFiles;
+
+    private ShardedTree(HashTreeNode root, List<MerkleTreeFile> shardFiles) {
+        this.root = root;
+        this.shardFiles = shardFiles;
+    }
+
+    /**
+     * Combine the shard trees of {@code collection} into the tree over the whole collection.
+     *
+     * @param collection      The root of the collection.
+     * @param plan            The plan the shards were built by.
+     * @param outputDirectory The directory containing the tree files of the shards.
+     * @return The merged tree, which has to be closed after use.
+     * @throws IOException If a shard tree could not be read, does not belong to the collection or was not built with
+     *                     unbounded fanout.
+     */
+    public static ShardedTree merge(FileComposite collection, ShardPlan plan, Path outputDirectory)
+            throws IOException {
+        HashAlgorithm hashAlgorithm = plan.getHashAlgorithm();
+        List<MerkleTreeFile> opened = new ArrayList<>();
+        try {
+            // the shard roots of each split directory, by the index of their first child
+            Map<String, Map<Integer, HashTreeNode>> shardRoots = new HashMap<>();
+            for (Shard shard : plan.getShards()) {
+                Path treeFile = outputDirectory.resolve(shard.treeFile());
+                MerkleTreeFile shardFile = MerkleTreeFile.open(treeFile);
+                opened.add(shardFile);
+                HashTreeNode shardRoot = shardFile.getRoot();
+                if (!shard.directory().equals(shardRoot.getId())
+                        || shardRoot.getChildCount() != shard.to() - shard.from()) {
+                    throw new IOException(treeFile + " does not contain the children " + shard.from() + " to "
+                            + shard.to() + " of '" + shard.directory() + "'");
+                }
+                shardRoots.computeIfAbsent(shard.directory(), directory -> new HashMap<>()).put(shard.from(),
+                        shardRoot);
+            }
+
+            HashTreeNode root = TreeTraversal.fold(collection, directory -> splitChildren(directory, plan),
+                    (FileComposite directory, List<HashTreeNode> splitChildren) -> {
+                        try {
+                            return mergeDirectory(directory, splitChildren,
+                                    shardRoots.getOrDefault(directory.getRelativePath(), Map.of()), plan);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+            return new ShardedTree(root, opened);
+        } catch (UncheckedIOException e) {
+            closeAll(opened);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            closeAll(opened);
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] getHash() {
+        return root.getHash();
+    }
+
+    @Override
+    public byte[] getContentHash() {
+        return root.getContentHash();
+    }
+
+    @Override
+    public String getId() {
+        return root.getId();
+    }
+
+    @Override
+    public int getChildCount() {
+        return root.getChildCount();
+    }
+
+    @Override
+    public HashTreeNode getChild(int index) {
+        return root.getChild(index);
+    }
+
+    /**
+     * Stitch the reduced hash tree of a node from its path inside its shard and the groups of the merged directories. The
+     * result is the same as {@link com.example.merkletree.MerkleTreeNode#getPathFromAncestor(byte[])} on a tree built
+     * in a single process.
+     *
+     * @param nodeId The id of the node, i.e. its path relative to the collection root.
+     * @return The partial hashtrees from the node up to the root, or {@code null} if there is no such node.
+     */
+    public PartialHashtree[] getPathFromAncestor(String nodeId) {
+        // ids are relative paths, so only the subtree whose id is a prefix of the searched id has to be read
+        List<HashTreeNode> nodes = new ArrayList<>();
+        HashTreeNode node = this;
+        nodes.add(node);
+        while (!nodeId.equals(node.getId())) {
+            HashTreeNode next = null;
+            for (HashTreeNode child : TreeTraversal.childrenOf(node)) {
+                String childId = child.getId();
+                if (childId != null && (nodeId.equals(childId) || nodeId.startsWith(childId + "/"))) {
+                    next = child;
+                    break;
+                }
+            }
+            if (next == null) {
+                return null;
+            }
+            node = next;
+            nodes.add(node);
+        }
+
+        PartialHashtree[] path = new PartialHashtree[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            path[nodes.size() - 1 - i] = new PartialHashtree(getHashes(nodes.get(i)));
+        }
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeAll(shardFiles);
+    }
+
+    private static void closeAll(List<MerkleTreeFile> shardFiles) throws IOException {
+        for (MerkleTreeFile shardFile : shardFiles) {
+            shardFile.close();
+        }
+    }
+
+    private static List<FileComposite> splitChildren(FileComposite directory, ShardPlan plan) {
+        List<FileComposite> splitChildren = new ArrayList<>();
+        for (Composite child : directory.getChildren()) {
+            if (plan.isSplit(((FileComposite) child).getRelativePath())) {
+                splitChildren.add((FileComposite) child);
+            }
+        }
+        return splitChildren;
+    }
+
+    /**
+     * Build the node of a split directory from the already merged nodes of its split children and the roots of the
+     * shards containing its other children.
+     */
+    private static HashTreeNode mergeDirectory(FileComposite directory, List<HashTreeNode> splitChildren,
+            Map<Integer, HashTreeNode> shardRoots, ShardPlan plan) throws IOException {
+        List<Composite> children = directory.getChildren();
+        List<HashTreeNode> nodes = new ArrayList<>(children.size());
+        Iterator<HashTreeNode> merged = splitChildren.iterator();
+        int i = 0;
+        while (i < children.size()) {
+            if (plan.isSplit(((FileComposite) children.get(i)).getRelativePath())) {
+                nodes.add(merged.next());
+                i++;
+                continue;
+            }
+            HashTreeNode shardRoot = shardRoots.get(i);
+            if (shardRoot == null) {
+                throw new IOException("No shard contains '" + children.get(i).getId() + "'");
+            }
+            for (HashTreeNode node : TreeTraversal.childrenOf(shardRoot)) {
+                if (i == children.size() || !children.get(i).getId().equals(node.getId())) {
+                    throw new IOException("The shard of '" + directory.getId() + "' does not match the collection at "
+                            + node.getId());
+                }
+                if (node.getContentHash() == null) {
+                    throw new IOException("The shard containing '" + node.getId()
+                            + "' was built with bounded fanout, which is not supported");
+                }
+                nodes.add(node);
+                i++;
+            }
+        }
+        return new MergedNode(directory.getId(), ContentHasher.DEFAULT.hash(directory, plan.getHashAlgorithm()),
+                nodes, plan.getHashAlgorithm());
+    }
+
+    /**
+     * The hashes of all children of {@code node} followed by its content hash, if it has one, as in
+     * {@link com.example.merkletree.MerkleTreeNode#getPartialHashtree()}.
+     */
+    private static byte[][] getHashes(HashTreeNode node) {
+        byte[] contentHash = node.getContentHash();
+        byte[][] hashes = new byte[node.getChildCount() + (contentHash == null ? 0 : 1)][];
+        for (int i = 0; i < node.getChildCount(); i++) {
+            hashes[i] = node.getChild(i).getHash();
+        }
+        if (contentHash != null) {
+            hashes[node.getChildCount()] = contentHash;
+        }
+        return hashes;
+    }
+
+    private static class MergedNode implements HashTreeNode {
+        private final String id;
+        private final byte[] contentHash;
+        private final List<HashTreeNode> children;
+        private final byte[] hash;
+
+        MergedNode(String id, byte[] contentHash, List<HashTreeNode> children, HashAlgorithm hashAlgorithm) {
+            this.id = id;
+            this.contentHash = contentHash;
+            this.children = children;
+            this.hash = CryptoUtils.hashGroup(getHashes(this), hashAlgorithm);
+        }
+
+        @Override
+        public byte[] getHash() {
+            return hash;
+        }
+
+        @Override
+        public byte[] getContentHash() {
+            return contentHash;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public int getChildCount() {
+            return children.size();
+        }
+
+        @Override
+        public HashTreeNode getChild(int index) {
+            return children.get(index);
+        }
+    }
+}
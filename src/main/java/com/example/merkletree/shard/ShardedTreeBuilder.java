@@ -0,0 +1,186 @@
+package com.example.merkletree.shard;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.TreeTraversal;
+import com.example.merkletree.composite.Composite;
+import com.example.merkletree.composite.FileComposite;
+import com.example.merkletree.shard.ShardPlan.Shard;
+
+/**
+ * Coordinates a sharded build of the merkle tree over a file collection. The collection is split by size into
+ * {@link ShardPlan.Shard 'shards'} of consecutive children of a directory, splitting directories that are too large
+ * for one shard down the tree. The shards are distributed over a number of {@link ShardWorker 'worker processes'},
+ * largest first to the worker with the least work, and the workers write the shard trees to files. The coordinator
+ * then {@link ShardedTree#merge(FileComposite, ShardPlan, Path) 'merges'} them, building the nodes of the split
+ * directories itself. The resulting tree is identical to one built by a single
+ * {@link com.example.merkletree.MerkleTreeNode} with unbounded fanout; bounded fanout is not supported.
+ * <p>
+ * {@link #build(FileComposite)} runs the workers as local JVM processes. To run workers on other machines, start
+ * {@link ShardWorker} there with the {@link ShardPlan#workerArguments(int, Path, Path) 'arguments'} of
+ * {@link #plan(FileComposite)} and merge the collected files.
+ */
+public class ShardedTreeBuilder {
+    /**
+     * The estimated cost of a file apart from its content, in bytes: opening it, reading its metadata and hashing a
+     * small file are dominated by this.
+     */
+    static final long FILE_WEIGHT = 4096;
+    /**
+     * More shards than workers even out wrong estimates.
+     */
+    private static final int SHARDS_PER_WORKER = 4;
+
+    private final HashAlgorithm hashAlgorithm;
+    private final Path workDirectory;
+    private final int workers;
+
+    /**
+     * @param hashAlgorithm The hash algorithm to use.
+     * @param workDirectory The directory the workers write their shard trees to.
+     * @param workers       The number of worker processes.
+     */
+    public ShardedTreeBuilder(HashAlgorithm hashAlgorithm, Path workDirectory, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one worker is required");
+        }
+        this.hashAlgorithm = hashAlgorithm;
+        this.workDirectory = workDirectory;
+        this.workers = workers;
+    }
+
+    /**
+     * Split {@code collection} into shards and assign them to the workers. Only reads the metadata of the files.
+     *
+     * @param collection The root of the collection.
+     * @return The plan.
+     */
+    public ShardPlan plan(FileComposite collection) {
+        // on a separate composite, so the children of directories that are not split are not kept in memory
+        Map<String, Long> weights = new HashMap<>();
+        long total = TreeTraversal.fold(new FileComposite(collection.getPath()), Composite::getChildren,
+                (Composite node, List<Long> childWeights) -> {
+                    FileComposite file = (FileComposite) node;
+                    long weight = FILE_WEIGHT;
+                    if (file.isDirectory()) {
+                        for (long childWeight : childWeights) {
+                            weight += childWeight;
+                        }
+                    } else {
+                        weight += file.getFingerprint().size();
+                    }
+                    weights.put(file.getRelativePath(), weight);
+                    return weight;
+                });
+        long target = Math.max(1, total / ((long) workers * SHARDS_PER_WORKER));
+
+        Set<String> splitDirectories = new HashSet<>();
+        List<Shard> shards = new ArrayList<>();
+        Deque<FileComposite> toSplit = new ArrayDeque<>();
+        toSplit.push(collection);
+        while (!toSplit.isEmpty()) {
+            FileComposite directory = toSplit.pop();
+            splitDirectories.add(directory.getRelativePath());
+            List<Composite> children = directory.getChildren();
+            int from = 0;
+            long weight = 0;
+            for (int i = 0; i < children.size(); i++) {
+                FileComposite child = (FileComposite) children.get(i);
+                long childWeight = weights.get(child.getRelativePath());
+                if (childWeight > target && child.isDirectory()) {
+                    if (i > from) {
+                        shards.add(shard(directory, from, i, shards.size(), weight));
+                    }
+                    toSplit.push(child);
+                    from = i + 1;
+                    weight = 0;
+                    continue;
+                }
+                if (i > from && weight + childWeight > target) {
+                    shards.add(shard(directory, from, i, shards.size(), weight));
+                    from = i;
+                    weight = 0;
+                }
+                weight += childWeight;
+            }
+            if (children.size() > from) {
+                shards.add(shard(directory, from, children.size(), shards.size(), weight));
+            }
+        }
+
+        List<List<Shard>> assignments = new ArrayList<>();
+        long[] loads = new long[Math.min(workers, shards.size())];
+        for (int worker = 0; worker < loads.length; worker++) {
+            assignments.add(new ArrayList<>());
+        }
+        List<Shard> largestFirst = new ArrayList<>(shards);
+        largestFirst.sort(Comparator.comparingLong(Shard::weight).reversed());
+        for (Shard shard : largestFirst) {
+            int leastLoaded = 0;
+            for (int worker = 1; worker < loads.length; worker++) {
+                if (loads[worker] < loads[leastLoaded]) {
+                    leastLoaded = worker;
+                }
+            }
+            assignments.get(leastLoaded).add(shard);
+            loads[leastLoaded] += shard.weight();
+        }
+        return new ShardPlan(hashAlgorithm, splitDirectories, shards, assignments);
+    }
+
+    /**
+     * Build the tree over {@code collection} with local worker processes and merge the results.
+     *
+     * @param collection The root of the collection.
+     * @return The merged tree, which has to be closed after use.
+     * @throws IOException If a worker failed or a shard tree could not be read.
+     */
+    public ShardedTree build(FileComposite collection) throws IOException {
+        Files.createDirectories(workDirectory);
+        ShardPlan plan = plan(collection);
+        List<Process> processes = new ArrayList<>();
+        try {
+            for (int worker = 0; worker < plan.getWorkerCount(); worker++) {
+                processes.add(startWorker(plan.workerArguments(worker, collection.getPath(), workDirectory)));
+            }
+            for (Process process : processes) {
+                int exitCode = process.waitFor();
+                if (exitCode != 0) {
+                    throw new IOException("Shard worker " + process.pid() + " failed with exit code " + exitCode);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the shard workers", e);
+        } finally {
+            processes.forEach(Process::destroy);
+        }
+        return ShardedTree.merge(collection, plan, workDirectory);
+    }
+
+    private Process startWorker(List<String> workerArguments) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+        command.addAll(workerArguments);
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    private static Shard shard(FileComposite directory, int from, int to, int index, long weight) {
+        return new Shard(directory.getRelativePath(), from, to, "shard-" + index + ".tree", weight);
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.merkletree.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import com.example.merkletree.HashTreeNode;
+import com.example.merkletree.TreeTraversal;
+
+/**
+ * A merkle hash tree persisted to a single file. Nodes are only read from disk when they are accessed, so trees that
+ * do not fit into the heap can still be walked, e.g. to {@link com.example.merkletree.diff.MerkleTreeDiff 'diff'}
+ * them against a newer tree.
+ * <p>
+ * The file starts with a header (magic, version, hash length, offset of the root node), followed by the nodes in
+ * post-order. Each node consists of its hash, a flag byte telling whether it has a content hash, its content hash
+ * (zeros for intermediate nodes without one), its id (length-prefixed UTF-8, length {@code -1} if absent), the number
+ * of children and the file offsets of all children.
+ */
+public class MerkleTreeFile implements AutoCloseable {
+    private static final int MAGIC = 0x4D4B5446; // "MKTF"
+    // version 1 had no content hash flag, its nodes cannot be read with the current layout
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 4 + 4 + 4 + 8;
+    private static final int ROOT_OFFSET_POSITION = 12;
+
+    private final FileChannel channel;
+    private final int hashLength;
+    private final long rootOffset;
+
+    private MerkleTreeFile(FileChannel channel, int hashLength, long rootOffset) {
+        this.channel = channel;
+        this.hashLength = hashLength;
+        this.rootOffset = rootOffset;
+    }
+
+    /**
+     * Write the tree below {@code root} to {@code file}, replacing the file if it exists.
+     *
+     * @param root The root of the tree to write.
+     * @param file The file to write to.
+     * @throws IOException If the file could not be written.
+     */
+    public static void write(HashTreeNode root, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            int hashLength = root.getHash().length;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(hashLength);
+            out.writeLong(-1);
+
+            // post-order, so the offsets of all children are known when their parent is written
+            long offset;
+            try {
+                offset = TreeTraversal.fold(root, TreeTraversal::childrenOf, (node, childOffsets) -> {
+                    try {
+                        long nodeOffset = out.position();
+                        writeNode(out, node, childOffsets, hashLength);
+                        return nodeOffset;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.flush();
+
+            ByteBuffer rootOffset = ByteBuffer.allocate(8).putLong(0, offset);
+            channel.write(rootOffset, ROOT_OFFSET_POSITION);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Open a tree written by {@link #write(HashTreeNode, Path)}.
+     *
+     * @param file The file to read from.
+     * @return The opened tree, which has to be closed after use.
+     * @throws IOException If the file could not be opened or is not a merkle tree file.
+     */
+    public static MerkleTreeFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a merkle tree file");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(file + " has format version " + header.getInt(4) + ", only version " + VERSION
+                        + " is supported, write the tree again");
+            }
+            long rootOffset = header.getLong(ROOT_OFFSET_POSITION);
+            if (rootOffset < 0) {
+                throw new IOException(file + " is incomplete");
+            }
+            return new MerkleTreeFile(channel, header.getInt(8), rootOffset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the root node of the tree.
+     */
+    public HashTreeNode getRoot() {
+        return readNode(rootOffset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static void writeNode(Output out, HashTreeNode node, List<Long> childOffsets, int hashLength)
+            throws IOException {
+        byte[] contentHash = node.getContentHash();
+        if (node.getHash().length != hashLength || contentHash != null && contentHash.length != hashLength) {
+            throw new IllegalArgumentException("All hashes of a tree must have the same length");
+        }
+        out.write(node.getHash());
+        out.write(new byte[] { (byte) (contentHash == null ? 0 : 1) });
+        out.write(contentHash == null ? new byte[hashLength] : contentHash);
+        if (node.getId() == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] id = node.getId().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(id.length);
+            out.write(id);
+        }
+        out.writeInt(childOffsets.size());
+        for (long childOffset : childOffsets) {
+            out.writeLong(childOffset);
+        }
+    }
+
+    private FileNode readNode(long offset) {
+        try {
+            ByteBuffer fixed = ByteBuffer.allocate(2 * hashLength + 1 + 4);
+            readFully(channel, fixed, offset);
+            byte[] hash = new byte[hashLength];
+            fixed.get(0, hash);
+            byte[] contentHash = null;
+            if (fixed.get(hashLength) != 0) {
+                contentHash = new byte[hashLength];
+                fixed.get(hashLength + 1, contentHash);
+            }
+            int idLength = fixed.getInt(2 * hashLength + 1);
+            long position = offset + fixed.capacity();
+
+            String id = null;
+            if (idLength >= 0) {
+                ByteBuffer idBytes = ByteBuffer.allocate(idLength);
+                readFully(channel, idBytes, position);
+                id = new String(idBytes.array(), StandardCharsets.UTF_8);
+                position += idLength;
+            }
+
+            ByteBuffer childCount = ByteBuffer.allocate(4);
+            readFully(channel, childCount, position);
+            return new FileNode(hash, contentHash, id, childCount.getInt(0), position + 4);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read node at offset " + offset, e);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of merkle tree file");
+            }
+        }
+    }
+
+    private class FileNode implements HashTreeNode {
+        private final byte[] hash;
+        private final byte[] contentHash;
+        private final String id;
+        private final int childCount;
+        private final long childOffsetsPosition;
+
+        FileNode(byte[] hash, byte[] contentHash, String id, int childCount, long childOffsetsPosition) {
+            this.hash = hash;
+            this.contentHash = contentHash;
+            this.id = id;
+            this.childCount = childCount;
+            this.childOffsetsPosition = childOffsetsPosition;
+        }
+
+        @Override
+        public byte[] getHash() {
+            return hash;
+        }
+
+        @Override
+        public byte[] getContentHash() {
+            return contentHash;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public int getChildCount() {
+            return childCount;
+        }
+
+        @Override
+        public HashTreeNode getChild(int index) {
+            if (index < 0 || index >= childCount) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            try {
+                ByteBuffer childOffset = ByteBuffer.allocate(8);
+                readFully(channel, childOffset, childOffsetsPosition + 8L * index);
+                return readNode(childOffset.getLong(0));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read child " + index, e);
+            }
+        }
+    }
+
+    /**
+     * Buffered sequential output to a file channel that keeps track of the file position.
+     */
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private long flushed;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        void writeInt(int value) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensureRemaining(8);
+            buffer.putLong(value);
+        }
+
+        void write(byte[] bytes) throws IOException {
+            int written = 0;
+            while (written < bytes.length) {
+                ensureRemaining(1);
+                int length = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, length);
+                written += length;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensureRemaining(int length) throws IOException {
+            if (buffer.remaining() < length) {
+                flush();
+            }
+        }
+    }
+}
@@ -3,9 +3,12 @@ package com.example.merkletree.utils;
 import java.security.MessageDigest;
 import java.util.Arrays;
 
+import com.example.merkletree.GroupHashing;
 import com.example.merkletree.HashAlgorithm;
 
 public class CryptoUtils {
+    /** Below this many values a comparison sort beats the radix passes. */
+    private static final int RADIX_SORT_THRESHOLD = 64;
 
     public static byte[] hash(byte[] content, HashAlgorithm algorithm) {
         if (algorithm == null) {
@@ -15,9 +18,49 @@ public class CryptoUtils {
         return md.digest(content);
     }
 
+    /**
+     * Calculate the hash of a group of hash values (a partial hashtree) with the {@link GroupHashing#RFC4998
+     * 'RFC 4998'} rules: sort the values in binary ascending order, concatenate them and hash the result. A group with
+     * a single value is not hashed again, its value is passed on unchanged, as validators of RFC 4998 and RFC 6283
+     * evidence records expect.
+     *
+     * @param hashes    The hash values of the group.
+     * @param algorithm The hash algorithm to use.
+     * @return The hash value of the group.
+     */
+    public static byte[] hashGroup(byte[][] hashes, HashAlgorithm algorithm) {
+        return hashGroup(hashes, algorithm, GroupHashing.RFC4998);
+    }
+
+    /**
+     * Calculate the hash of a group of hash values with the given rules.
+     *
+     * @param hashes       The hash values of the group.
+     * @param algorithm    The hash algorithm to use.
+     * @param groupHashing The rules to apply, {@link GroupHashing#LEGACY} only to verify old root hashes.
+     * @return The hash value of the group.
+     */
+    public static byte[] hashGroup(byte[][] hashes, HashAlgorithm algorithm, GroupHashing groupHashing) {
+        if (groupHashing == GroupHashing.LEGACY) {
+            return hash(sortAndFlatten(hashes), algorithm);
+        }
+        if (hashes.length == 1) {
+            return hashes[0];
+        }
+        // binary ascending order as required by RFC 4998 and RFC 6283 compares the bytes unsigned
+        sortUnsigned(hashes);
+        return hash(flatten(hashes), algorithm);
+    }
+
+    /**
+     * Sort the arrays as signed bytes and concatenate them, the order of {@link GroupHashing#LEGACY}.
+     */
     public static byte[] sortAndFlatten(byte[][] arrays) {
         Arrays.sort(arrays, (a, b) -> Arrays.compare(a, b));
+        return flatten(arrays);
+    }
 
+    private static byte[] flatten(byte[][] arrays) {
         // Calculate the total length of the flattened array
         int totalLength = 0;
         for (byte[] array : arrays) {
@@ -36,4 +79,61 @@ public class CryptoUtils {
 
         return flattened;
     }
+
+    /**
+     * Sort byte arrays in binary ascending order, comparing the bytes unsigned. Hash values all have the same length,
+     * large groups of them are sorted with a most significant byte first radix sort instead of comparing whole arrays.
+     *
+     * @param arrays The arrays to sort in place.
+     */
+    public static void sortUnsigned(byte[][] arrays) {
+        if (arrays.length < RADIX_SORT_THRESHOLD || !haveEqualLength(arrays)) {
+            Arrays.sort(arrays, Arrays::compareUnsigned);
+            return;
+        }
+        radixSort(arrays, new byte[arrays.length][], 0, arrays.length, 0);
+    }
+
+    private static boolean haveEqualLength(byte[][] arrays) {
+        for (byte[] array : arrays) {
+            if (array.length != arrays[0].length) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sort {@code arrays[from, to)}, which already agree on all bytes before {@code index}, by the bytes from
+     * {@code index} on. The recursion depth is bounded by the length of the arrays.
+     */
+    private static void radixSort(byte[][] arrays, byte[][] buffer, int from, int to, int index) {
+        if (to - from < RADIX_SORT_THRESHOLD) {
+            Arrays.sort(arrays, from, to, Arrays::compareUnsigned);
+            return;
+        }
+        if (index == arrays[from].length) {
+            return;
+        }
+
+        // bucket boundaries: bucket b starts at offsets[b] and ends at offsets[b + 1]
+        int[] offsets = new int[257];
+        for (int i = from; i < to; i++) {
+            offsets[(arrays[i][index] & 0xFF) + 1]++;
+        }
+        for (int b = 0; b < 256; b++) {
+            offsets[b + 1] += offsets[b];
+        }
+        int[] next = Arrays.copyOf(offsets, 256);
+        for (int i = from; i < to; i++) {
+            buffer[next[arrays[i][index] & 0xFF]++] = arrays[i];
+        }
+        System.arraycopy(buffer, 0, arrays, from, to - from);
+
+        for (int b = 0; b < 256; b++) {
+            if (offsets[b + 1] - offsets[b] > 1) {
+                radixSort(arrays, buffer, from + offsets[b], from + offsets[b + 1], index + 1);
+            }
+        }
+    }
 }
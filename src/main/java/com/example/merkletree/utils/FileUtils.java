@@ -0,0 +1,32 @@
+package com.example.merkletree.utils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class FileUtils {
+
+    private FileUtils() {
+    }
+
+    /**
+     * Force the entries of {@code directory} to disk, so that a file created or renamed in it survives a crash. Call it
+     * after an atomic move that replaces a file, otherwise the old file may be back after a crash.
+     *
+     * @param directory The directory containing the created or renamed file.
+     * @throws IOException If the directory could not be forced to disk.
+     */
+    public static void syncDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Windows cannot open directories, there the durability of the rename is left to the file system
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+}
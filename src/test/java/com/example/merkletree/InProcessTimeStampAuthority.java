@@ -0,0 +1,100 @@
+package com.example.merkletree;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.CertIOException;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TSPException;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+import org.bouncycastle.tsp.TimeStampResponseGenerator;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.bouncycastle.tsp.TimeStampTokenGenerator;
+import org.bouncycastle.util.CollectionStore;
+
+/**
+ * Timestamp authority running inside the test JVM with a freshly generated, self-signed certificate. Allows tests to
+ * obtain timestamps without network access to a real TSA.
+ */
+public class InProcessTimeStampAuthority {
+    private final TimeStampResponseGenerator responseGenerator;
+    private final X509CertificateHolder certificate;
+    private final AtomicLong serialNumber = new AtomicLong();
+
+    public InProcessTimeStampAuthority() {
+        try {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+            keyPairGenerator.initialize(256);
+            KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+            X500Name name = new X500Name("CN=In-Process Test TSA");
+            Date now = new Date();
+            X509v3CertificateBuilder certificateBuilder = new JcaX509v3CertificateBuilder(name, BigInteger.ONE,
+                    new Date(now.getTime() - 60_000), new Date(now.getTime() + 86_400_000), name,
+                    keyPair.getPublic());
+            // a TSA certificate must have the critical extended key usage timeStamping
+            certificateBuilder.addExtension(Extension.extendedKeyUsage, true,
+                    new ExtendedKeyUsage(KeyPurposeId.id_kp_timeStamping));
+            ContentSigner contentSigner = new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate());
+            certificate = certificateBuilder.build(contentSigner);
+
+            DigestCalculator certIdDigest = new JcaDigestCalculatorProviderBuilder().build()
+                    .get(new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256));
+            TimeStampTokenGenerator tokenGenerator = new TimeStampTokenGenerator(
+                    new JcaSimpleSignerInfoGeneratorBuilder().build("SHA256withECDSA", keyPair.getPrivate(),
+                            new JcaX509CertificateConverter().getCertificate(certificate)),
+                    certIdDigest, new ASN1ObjectIdentifier("1.2.3.4.1"));
+            tokenGenerator.addCertificates(new CollectionStore<>(List.of(certificate)));
+
+            responseGenerator = new TimeStampResponseGenerator(tokenGenerator, TSPAlgorithms.ALLOWED);
+        } catch (GeneralSecurityException | OperatorCreationException | CertIOException | TSPException e) {
+            throw new RuntimeException("Could not set up the in-process TSA", e);
+        }
+    }
+
+    /**
+     * @return the self-signed certificate of the TSA, e.g. to trust it in a validator.
+     */
+    public X509CertificateHolder getCertificate() {
+        return certificate;
+    }
+
+    public TimeStampToken requestTimeStamp(TimeStampRequest request) {
+        try {
+            return responseGenerator
+                    .generate(request, BigInteger.valueOf(serialNumber.incrementAndGet()), new Date())
+                    .getTimeStampToken();
+        } catch (TSPException e) {
+            throw new RuntimeException("Unable to complete the timestamping", e);
+        }
+    }
+
+    public TimeStampToken timeStampRootHash(byte[] rootHash, HashAlgorithm hashAlgorithm) {
+        TimeStampRequestGenerator generator = new TimeStampRequestGenerator();
+        generator.setCertReq(true);
+        return requestTimeStamp(generator.generate(hashAlgorithm.getOid(), rootHash));
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.merkletree;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bouncycastle.asn1.tsp.ArchiveTimeStamp;
+import org.bouncycastle.asn1.tsp.PartialHashtree;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.junit.jupiter.api.Test;
+
+import com.example.merkletree.composite.Composite;
+import com.example.merkletree.composite.SyntheticCollection;
+import com.example.merkletree.composite.SyntheticCollection.Distribution;
+import com.example.merkletree.proof.MultiProof;
+import com.example.merkletree.utils.CryptoUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * End-to-end load test over a synthetic collection: build the tree, create and verify reduced hash trees with
+ * {@link MerkleTreeNode#getPathFromAncestor(byte[])} for a sample of the documents, prove and verify all documents
+ * with one {@link MultiProof} and timestamp against an {@link InProcessTimeStampAuthority}. The collection is small by
+ * default and can be scaled up with system properties, e.g.
+ * {@code mvn test -Dtest=LoadTests -Dloadtest.depth=8 -Dloadtest.maxFanout=11} for 1,324,162 nodes with the default
+ * seed.
+ */
+@Slf4j
+class LoadTests {
+    private static final HashAlgorithm HASH_ALGORITHM = HashAlgorithm.SHA256;
+
+    @Test
+    public void buildProveStampAndVerify() throws Exception {
+        long seed = Long.getLong("loadtest.seed", 4998);
+        int depth = Integer.getInteger("loadtest.depth", 5);
+        int maxFanout = Integer.getInteger("loadtest.maxFanout", 8);
+        int meanContentSize = Integer.getInteger("loadtest.meanContentSize", 512);
+        int timeStamps = Integer.getInteger("loadtest.timeStamps", 200);
+        int proofs = Integer.getInteger("loadtest.proofs", 200);
+        SyntheticCollection collection = new SyntheticCollection(seed, depth, Distribution.uniform(0, maxFanout),
+                Distribution.exponential(meanContentSize, 64 * meanContentSize));
+        InProcessTimeStampAuthority timeStampAuthority = new InProcessTimeStampAuthority();
+
+        long start = System.nanoTime();
+        MerkleTreeNode tree = new MerkleTreeNode(collection.getRoot(), HASH_ALGORITHM);
+        long buildNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        TimeStampToken rootTimeStamp = timeStampAuthority.timeStampRootHash(tree.getHash(), HASH_ALGORITHM);
+        for (int i = 1; i < timeStamps; i++) {
+            timeStampAuthority.timeStampRootHash(tree.getHash(), HASH_ALGORITHM);
+        }
+        long stampNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        @SuppressWarnings("unchecked")
+        X509CertificateHolder certificate = (X509CertificateHolder) rootTimeStamp.getCertificates()
+                .getMatches(rootTimeStamp.getSID()).iterator().next();
+        rootTimeStamp.validate(new JcaSimpleSignerInfoVerifierBuilder().build(certificate));
+        byte[] rootHash = rootTimeStamp.getTimeStampInfo().getMessageImprintDigest();
+        assertArrayEquals(tree.getHash(), rootHash);
+        long validateNanos = System.nanoTime() - start;
+
+        List<MerkleTreeNode> nodes = new ArrayList<>();
+        TreeTraversal.walk(tree, MerkleTreeNode::getChildren, (node, nodeDepth) -> nodes.add(node));
+        assertEquals(collection.countNodes(), nodes.size());
+
+        // the search of getPathFromAncestor walks the tree, so single proofs are timed on evenly spread documents
+        int sampled = Math.min(proofs, nodes.size());
+        long proofNanos = 0;
+        long verifyProofNanos = 0;
+        for (int i = 0; i < sampled; i++) {
+            MerkleTreeNode node = nodes.get((int) ((long) i * nodes.size() / sampled));
+            long proofStart = System.nanoTime();
+            ArchiveTimeStamp archiveTimeStamp = TimeStamping.createArchiveTimeStamp(
+                    tree.getPathFromAncestor(node.getHash()), rootTimeStamp, HASH_ALGORITHM);
+            long verifyStart = System.nanoTime();
+            proofNanos += verifyStart - proofStart;
+
+            verify(node.getContentHash(), archiveTimeStamp.getReducedHashTree(), rootHash);
+            verifyProofNanos += System.nanoTime() - verifyStart;
+        }
+
+        List<Composite> documents = new ArrayList<>(nodes.size());
+        List<byte[]> documentHashes = new ArrayList<>(nodes.size());
+        for (MerkleTreeNode node : nodes) {
+            documents.add(node.getComposite());
+            documentHashes.add(node.getContentHash());
+        }
+        start = System.nanoTime();
+        MultiProof multiProof = MultiProof.create(tree, documents, HASH_ALGORITHM);
+        long multiProofNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        assertTrue(multiProof.verify(documentHashes, rootHash));
+        long verifyMultiProofNanos = System.nanoTime() - start;
+
+        log.info("Load test over {} documents (seed {}, depth {}, fanout 0-{}, mean content size {} bytes)",
+                nodes.size(), seed, depth, maxFanout, meanContentSize);
+        log.info("build:    {} documents/s", rate(nodes.size(), buildNanos));
+        log.info("prove:    {} proofs/s, {} documents sampled", rate(sampled, proofNanos), sampled);
+        log.info("verify:   {} proofs/s", rate(sampled, verifyProofNanos));
+        log.info("multi:    {} documents/s proven, {} documents/s verified", rate(nodes.size(), multiProofNanos),
+                rate(nodes.size(), verifyMultiProofNanos));
+        log.info("stamp:    {} timestamps/s", rate(timeStamps, stampNanos));
+        log.info("validate: {} ms for the root timestamp", validateNanos / 1_000_000);
+    }
+
+    /**
+     * Verify a reduced hash tree like RFC 4998, section 4.3, steps 2 and 3, and compare the result to the root hash.
+     */
+    private static void verify(byte[] contentHash, PartialHashtree[] reducedHashTree, byte[] rootHash) {
+        assertTrue(reducedHashTree[0].containsHash(contentHash));
+        byte[] hash = CryptoUtils.hashGroup(reducedHashTree[0].getValues(), HASH_ALGORITHM);
+        for (int i = 1; i < reducedHashTree.length; i++) {
+            assertTrue(reducedHashTree[i].containsHash(hash));
+            hash = CryptoUtils.hashGroup(reducedHashTree[i].getValues(), HASH_ALGORITHM);
+        }
+        assertArrayEquals(rootHash, hash);
+    }
+
+    private static long rate(long count, long nanos) {
+        return nanos == 0 ? count : count * 1_000_000_000L / nanos;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.merkletree;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import org.bouncycastle.asn1.tsp.PartialHashtree;
+import org.junit.jupiter.api.Test;
+
+import com.example.merkletree.composite.Composite;
+import com.example.merkletree.composite.TestComposite;
+import com.example.merkletree.utils.CryptoUtils;
+
+class MerkleTreeNodeTests {
+
+    @Test
+    public void handleDeepHierarchies() {
+        int depth = 50_000;
+        TestComposite deepest = new TestComposite(new ArrayList<>());
+        TestComposite root = deepest;
+        for (int i = 1; i < depth; i++) {
+            List<TestComposite> children = new ArrayList<>();
+            children.add(root);
+            root = new TestComposite(children);
+        }
+        HashAlgorithm hashAlgorithm = HashAlgorithm.SHA256;
+
+        MerkleTreeNode tree = new MerkleTreeNode(root, hashAlgorithm);
+
+        MerkleTreeNode deepestNode = tree.findAncestor(deepest);
+        assertSame(deepest, deepestNode.getComposite());
+
+        PartialHashtree[] path = tree.getPathFromAncestor(deepestNode.getHash());
+        assertEquals(depth, path.length);
+        for (int i = 0; i < path.length - 1; i++) {
+            byte[] hash = CryptoUtils.hashGroup(path[i].getValues(), hashAlgorithm);
+            assertTrue(path[i + 1].containsHash(hash));
+        }
+    }
+
+    @Test
+    public void boundFanoutOfWideNodes() {
+        int width = 10_000;
+        int maxFanout = 16;
+        List<TestComposite> children = new ArrayList<>();
+        for (int i = 0; i < width; i++) {
+            children.add(new TestComposite(new ArrayList<>()));
+        }
+        TestComposite root = new TestComposite(children);
+        HashAlgorithm hashAlgorithm = HashAlgorithm.SHA256;
+
+        MerkleTreeNode tree = new MerkleTreeNode(root, hashAlgorithm, ContentHasher.DEFAULT, maxFanout);
+
+        // no group exceeds the fanout and all documents are still in the tree
+        int[] documents = { 0 };
+        TreeTraversal.walk(tree, MerkleTreeNode::getChildren, (node, depth) -> {
+            assertTrue(node.getPartialHashtree().getValues().length <= maxFanout);
+            if (node.getComposite() != null) {
+                documents[0]++;
+            }
+            return true;
+        });
+        assertEquals(width + 1, documents[0]);
+
+        // the path of a document only grows logarithmically with the number of its siblings
+        MerkleTreeNode leaf = tree.findAncestor(children.get(width / 2));
+        PartialHashtree[] path = tree.getPathFromAncestor(leaf.getHash());
+        assertTrue(path.length <= 2 + (int) Math.ceil(Math.log(width) / Math.log(maxFanout)));
+        for (int i = 0; i < path.length - 1; i++) {
+            byte[] hash = CryptoUtils.hashGroup(path[i].getValues(), hashAlgorithm);
+            assertTrue(path[i + 1].containsHash(hash));
+        }
+        assertArrayEquals(tree.getHash(), CryptoUtils.hashGroup(path[path.length - 1].getValues(), hashAlgorithm));
+    }
+
+    @Test
+    public void sortHashesUnsigned() {
+        Random random = new Random(42);
+        byte[][] hashes = new byte[5_000][];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = new byte[32];
+            random.nextBytes(hashes[i]);
+        }
+        // shared prefixes make the radix sort look at later bytes
+        for (int i = 0; i < 500; i++) {
+            hashes[i][0] = 0;
+            hashes[i][1] = (byte) 0xFF;
+        }
+        byte[][] expected = hashes.clone();
+        Arrays.sort(expected, Arrays::compareUnsigned);
+
+        CryptoUtils.sortUnsigned(hashes);
+
+        assertArrayEquals(expected, hashes);
+    }
+
+    @Test
+    public void reproduceLegacyRootHashes() {
+        Composite root = new FixedComposite("root",
+                new FixedComposite("a", new FixedComposite("a1"), new FixedComposite("a2")), new FixedComposite("b"),
+                new FixedComposite("c", new FixedComposite("c1")));
+        HashAlgorithm hashAlgorithm = HashAlgorithm.SHA256;
+        // root hash of this tree as calculated by the first release
+        byte[] legacyRootHash = HexFormat.of()
+                .parseHex("d44a12463c75dd2b39d099e9b8e1cfe3e4f932447b3a73797c03d8b783352a7b");
+
+        MerkleTreeNode legacyTree = new MerkleTreeNode(root, hashAlgorithm, GroupHashing.LEGACY);
+        MerkleTreeNode tree = new MerkleTreeNode(root, hashAlgorithm);
+
+        assertArrayEquals(legacyRootHash, legacyTree.getHash());
+        assertFalse(Arrays.equals(legacyRootHash, tree.getHash()));
+        // reduced hash trees of a legacy tree verify the way the first release verified them
+        MerkleTreeNode leaf = legacyTree.findAncestor(root.getChildren().get(0).getChildren().get(1));
+        PartialHashtree[] path = legacyTree.getPathFromAncestor(leaf.getHash());
+        for (int i = 0; i < path.length - 1; i++) {
+            byte[] hash = CryptoUtils.hash(CryptoUtils.sortAndFlatten(path[i].getValues()), hashAlgorithm);
+            assertTrue(path[i + 1].containsHash(hash));
+        }
+        assertArrayEquals(legacyRootHash,
+                CryptoUtils.hash(CryptoUtils.sortAndFlatten(path[path.length - 1].getValues()), hashAlgorithm));
+    }
+
+    private static class FixedComposite extends Composite {
+        private final String content;
+        private final List<Composite> children;
+
+        FixedComposite(String content, Composite... children) {
+            this.content = content;
+            this.children = List.of(children);
+        }
+
+        @Override
+        public String getContent() {
+            return content;
+        }
+
+        @Override
+        public List<Composite> getChildren() {
+            return children;
+        }
+    }
+}
@@ -104,9 +104,9 @@ class MerkleTreesApplicationTests {
         // 3. Concatenate the hash values of the actual list (partialHashtree) of hash values in binary ascending order
         // and calculate the hash value h' with algorithm H. This hash value h' MUST become a member of the next higher
         // list of hash values (from the next partialHashtree). Continue step 3 until a root hash value is calculated.
+        // A list with a single hash value is not hashed again (see CryptoUtils.hashGroup).
         for (int i = 0; i < result.getReducedHashTree().length - 1; i++) {
-            byte[] concatenatedHashes = CryptoUtils.sortAndFlatten(result.getReducedHashTree()[i].getValues());
-            byte[] hPrime = CryptoUtils.hash(concatenatedHashes, hashAlgorithm);
+            byte[] hPrime = CryptoUtils.hashGroup(result.getReducedHashTree()[i].getValues(), hashAlgorithm);
             assertEquals(true, result.getReducedHashTree()[i + 1].containsHash(hPrime));
         }
 
@@ -116,10 +116,8 @@ class MerkleTreesApplicationTests {
         // to their equivalent fields if they exist.
         TimeStampToken timeStampToken = new TimeStampToken(
                 result.getTimeStamp());
-        byte[] expectedRootHash = CryptoUtils.hash(
-                CryptoUtils.sortAndFlatten(
-                        result.getReducedHashTree()[result.getReducedHashTree().length - 1].getValues()),
-                hashAlgorithm);
+        byte[] expectedRootHash = CryptoUtils.hashGroup(
+                result.getReducedHashTree()[result.getReducedHashTree().length - 1].getValues(), hashAlgorithm);
         // alternative: byte[] hashedMessage = result.getTimeStampDigestValue();
         byte[] hashedMessage = timeStampToken.getTimeStampInfo().getMessageImprintDigest();
         assertEquals(Arrays.toString(hashedMessage), Arrays.toString(expectedRootHash));
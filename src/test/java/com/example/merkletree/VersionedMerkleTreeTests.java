@@ -0,0 +1,195 @@
+package com.example.merkletree;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.bouncycastle.asn1.tsp.PartialHashtree;
+import org.junit.jupiter.api.Test;
+
+import com.example.merkletree.composite.Composite;
+import com.example.merkletree.utils.CryptoUtils;
+
+class VersionedMerkleTreeTests {
+    private static final HashAlgorithm HASH_ALGORITHM = HashAlgorithm.SHA256;
+
+    @Test
+    public void shareUnchangedSubtrees() {
+        Document root = createCollection();
+        Document changed = root.children.get(0).children.get(1);
+        VersionedMerkleTree tree = new VersionedMerkleTree(root, HASH_ALGORITHM, ContentHasher.DEFAULT, 4);
+        VersionedMerkleTree.Version first = tree.current();
+
+        changed.content = "changed";
+        VersionedMerkleTree.Version second = tree.update(changed);
+
+        // the new root equals a tree built from scratch, while the untouched subtrees are shared
+        assertArrayEquals(new MerkleTreeNode(root, HASH_ALGORITHM, ContentHasher.DEFAULT, 4).getHash(),
+                second.root().getHash());
+        assertFalse(Arrays.equals(first.root().getHash(), second.root().getHash()));
+        assertSame(first.root().findAncestor(root.children.get(1)), second.root().findAncestor(root.children.get(1)));
+
+        Document added = new Document("added");
+        root.children.get(1).children.add(added);
+        VersionedMerkleTree.Version third = tree.add(root.children.get(1), added);
+        assertArrayEquals(new MerkleTreeNode(root, HASH_ALGORITHM, ContentHasher.DEFAULT, 4).getHash(),
+                third.root().getHash());
+
+        Document removed = root.children.get(0);
+        root.children.remove(removed);
+        VersionedMerkleTree.Version fourth = tree.remove(removed);
+        assertArrayEquals(new MerkleTreeNode(root, HASH_ALGORITHM, ContentHasher.DEFAULT, 4).getHash(),
+                fourth.root().getHash());
+        assertThrows(IllegalArgumentException.class, () -> tree.update(removed));
+
+        // earlier versions stay available for proofs against their roots
+        assertSame(first, tree.findVersion(first.root().getHash()));
+        assertProof(first.root(), first.root().findAncestor(removed));
+        tree.discardVersionsBefore(fourth.number());
+        assertNull(tree.getVersion(first.number()));
+        assertSame(fourth, tree.current());
+    }
+
+    @Test
+    public void shareIntermediatesOfWideParent() {
+        Document root = new Document("root");
+        for (int i = 0; i < 50; i++) {
+            root.children.add(new Document("document " + i));
+        }
+        VersionedMerkleTree tree = new VersionedMerkleTree(root, HASH_ALGORITHM, ContentHasher.DEFAULT, 4);
+
+        for (int i = 50; i < 120; i++) {
+            Document added = new Document("document " + i);
+            root.children.add(added);
+            assertChangedOnlyPath(tree, () -> tree.add(root, added));
+        }
+        for (int i = 100; i >= 0; i -= 3) {
+            Document removed = root.children.remove(i);
+            assertChangedOnlyPath(tree, () -> tree.remove(removed));
+        }
+        Document changed = root.children.get(40);
+        changed.content = "changed";
+        assertChangedOnlyPath(tree, () -> tree.update(changed));
+
+        MerkleTreeNode current = tree.current().root();
+        for (Document document : root.children) {
+            assertProof(current, current.findAncestor(document));
+        }
+    }
+
+    @Test
+    public void readWhileUpdating() throws Exception {
+        Document root = createCollection();
+        List<Document> documents = new ArrayList<>(root.children);
+        VersionedMerkleTree tree = new VersionedMerkleTree(root, HASH_ALGORITHM);
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                readers.add(executor.submit(() -> {
+                    int proofs = 0;
+                    while (running.get() || proofs == 0) {
+                        MerkleTreeNode snapshot = tree.current().root();
+                        for (Document document : documents) {
+                            assertProof(snapshot, snapshot.findAncestor(document));
+                            proofs++;
+                        }
+                    }
+                    return proofs;
+                }));
+            }
+
+            for (int i = 0; i < 200; i++) {
+                Document document = documents.get(i % documents.size());
+                document.content = "version " + i;
+                tree.update(document);
+            }
+            running.set(false);
+
+            for (Future<Integer> reader : readers) {
+                assertTrue(reader.get() > 0);
+            }
+        }
+        assertNotNull(tree.getVersion(200));
+    }
+
+    /**
+     * Assert that {@code change} only created new nodes on the path to the changed node and kept the fanout bounded.
+     */
+    private static void assertChangedOnlyPath(VersionedMerkleTree tree, Supplier<VersionedMerkleTree.Version> change) {
+        Set<MerkleTreeNode> previous = nodes(tree.current().root());
+        MerkleTreeNode root = change.get().root();
+        Set<MerkleTreeNode> created = nodes(root);
+        created.removeAll(previous);
+        assertTrue(created.size() <= 12, created.size() + " new nodes");
+
+        int depth = TreeTraversal.fold(root, MerkleTreeNode::getChildren, (node, childDepths) -> {
+            assertTrue(node.getChildren().size() <= (node.getComposite() == null ? 4 : 3));
+            return 1 + childDepths.stream().mapToInt(Integer::intValue).max().orElse(0);
+        });
+        assertTrue(depth <= 6, "depth " + depth);
+    }
+
+    private static Set<MerkleTreeNode> nodes(MerkleTreeNode root) {
+        Set<MerkleTreeNode> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        TreeTraversal.walk(root, MerkleTreeNode::getChildren, (node, depth) -> nodes.add(node));
+        return nodes;
+    }
+
+    private static void assertProof(MerkleTreeNode root, MerkleTreeNode node) {
+        PartialHashtree[] path = root.getPathFromAncestor(node.getHash());
+        for (int i = 0; i < path.length - 1; i++) {
+            assertTrue(path[i + 1].containsHash(CryptoUtils.hashGroup(path[i].getValues(), HASH_ALGORITHM)));
+        }
+        assertArrayEquals(root.getHash(), CryptoUtils.hashGroup(path[path.length - 1].getValues(), HASH_ALGORITHM));
+    }
+
+    private static Document createCollection() {
+        Document root = new Document("root");
+        for (int i = 0; i < 3; i++) {
+            Document folder = new Document("folder " + i);
+            for (int j = 0; j < 6; j++) {
+                folder.children.add(new Document("document " + i + "/" + j));
+            }
+            root.children.add(folder);
+        }
+        return root;
+    }
+
+    private static class Document extends Composite {
+        private final List<Document> children = new ArrayList<>();
+        private volatile String content;
+
+        Document(String content) {
+            this.content = content;
+        }
+
+        @Override
+        public String getContent() {
+            return content;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public List<Composite> getChildren() {
+            return (List<Composite>) (List<?>) children;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.merkletree.cli;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.merkletree.ContentHasher;
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.InProcessTimeStampAuthority;
+import com.example.merkletree.MerkleTreeNode;
+import com.example.merkletree.TreeTraversal;
+import com.example.merkletree.composite.FileComposite;
+import com.example.merkletree.content.PersistentContentHashStore;
+import com.example.merkletree.store.MerkleTreeFile;
+
+class MerkleTreeCliTests {
+    private static final Path COLLECTION = Path.of("src/test/resources/collection");
+
+    @Test
+    public void buildAndPersistTree(@TempDir Path directory) throws IOException {
+        Path treeFile = directory.resolve("collection.tree");
+        Path storeFile = directory.resolve("content-hashes.store");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        int exitCode = MerkleTreeCli.run(
+                new String[] { "build", COLLECTION.toString(), "--fanout", "4", "--tree", treeFile.toString(),
+                        "--store", storeFile.toString() },
+                new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8));
+
+        assertEquals(0, exitCode, err.toString(StandardCharsets.UTF_8));
+        MerkleTreeNode tree = new MerkleTreeNode(new FileComposite(COLLECTION), HashAlgorithm.SHA256,
+                ContentHasher.DEFAULT, 4);
+        byte[] printedHash = HexFormat.of().parseHex(out.toString(StandardCharsets.UTF_8).strip());
+        assertArrayEquals(tree.getHash(), printedHash);
+        try (MerkleTreeFile persisted = MerkleTreeFile.open(treeFile)) {
+            assertArrayEquals(tree.getHash(), persisted.getRoot().getHash());
+        }
+        long storedFiles;
+        try (PersistentContentHashStore store = PersistentContentHashStore.open(storeFile);
+                Stream<Path> files = Files.walk(COLLECTION)) {
+            storedFiles = files.filter(Files::isRegularFile).count();
+            assertEquals(storedFiles, store.size());
+        }
+
+        // the second run takes every digest from the store, so it appends no record
+        long storeSize = Files.size(storeFile);
+        out.reset();
+        exitCode = MerkleTreeCli.run(
+                new String[] { "build", COLLECTION.toString(), "--fanout", "4", "--store", storeFile.toString() },
+                new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8));
+        assertEquals(0, exitCode, err.toString(StandardCharsets.UTF_8));
+        assertArrayEquals(tree.getHash(), HexFormat.of().parseHex(out.toString(StandardCharsets.UTF_8).strip()));
+        assertEquals(storeSize, Files.size(storeFile));
+        try (PersistentContentHashStore store = PersistentContentHashStore.open(storeFile)) {
+            new MerkleTreeNode(new FileComposite(COLLECTION), HashAlgorithm.SHA256, store, 4);
+            assertEquals(storedFiles, store.getReusedDigests());
+        }
+    }
+
+    @Test
+    public void stampRootHash(@TempDir Path directory) throws Exception {
+        InProcessTimeStampAuthority tsa = new InProcessTimeStampAuthority();
+        Path tokenFile = directory.resolve("collection.tst");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        int exitCode = MerkleTreeCli.run(new String[] { "stamp", COLLECTION.toString(), tokenFile.toString() },
+                new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8),
+                tsa::timeStampRootHash);
+
+        assertEquals(0, exitCode, err.toString(StandardCharsets.UTF_8));
+        byte[] rootHash = new MerkleTreeNode(new FileComposite(COLLECTION), HashAlgorithm.SHA256).getHash();
+        assertArrayEquals(rootHash, HexFormat.of().parseHex(out.toString(StandardCharsets.UTF_8).strip()));
+        TimeStampToken timeStamp = new TimeStampToken(new CMSSignedData(Files.readAllBytes(tokenFile)));
+        timeStamp.validate(new JcaSimpleSignerInfoVerifierBuilder().build(tsa.getCertificate()));
+        assertArrayEquals(rootHash, timeStamp.getTimeStampInfo().getMessageImprintDigest());
+    }
+
+    @Test
+    public void writeEvidenceRecords(@TempDir Path directory) throws IOException {
+        InProcessTimeStampAuthority tsa = new InProcessTimeStampAuthority();
+        Path outputDirectory = directory.resolve("evidence");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        int exitCode = MerkleTreeCli.run(
+                new String[] { "evidence", COLLECTION.toString(), outputDirectory.toString() },
+                new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8),
+                tsa::timeStampRootHash);
+
+        assertEquals(0, exitCode, err.toString(StandardCharsets.UTF_8));
+        MerkleTreeNode tree = new MerkleTreeNode(new FileComposite(COLLECTION), HashAlgorithm.SHA256);
+        int[] nodes = { 0 };
+        TreeTraversal.walk(tree, MerkleTreeNode::getChildren, (node, depth) -> {
+            // every file and directory gets a record named by its relative path, the root is named "/"
+            String relativePath = ((FileComposite) node.getComposite()).getRelativePath();
+            String name = relativePath.isEmpty() ? "%2F" : URLEncoder.encode(relativePath, StandardCharsets.UTF_8);
+            assertTrue(Files.isRegularFile(outputDirectory.resolve(name + ".xml")), name);
+            nodes[0]++;
+            return true;
+        });
+        try (Stream<Path> records = Files.list(outputDirectory)) {
+            assertEquals(nodes[0], records.count());
+        }
+        assertEquals(nodes[0] + " evidence records for root " + HexFormat.of().formatHex(tree.getHash()),
+                out.toString(StandardCharsets.UTF_8).strip());
+    }
+
+    @Test
+    public void rejectBadUsage() {
+        PrintStream discard = new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8);
+
+        assertEquals(2, MerkleTreeCli.run(new String[] { "build" }, discard, discard));
+        assertEquals(2, MerkleTreeCli.run(new String[] { "shred", COLLECTION.toString() }, discard, discard));
+        assertEquals(2, MerkleTreeCli.run(new String[] { "build", COLLECTION.toString(), "--fanout" }, discard,
+                discard));
+        assertEquals(2, MerkleTreeCli.run(new String[] { "stamp", COLLECTION.toString() }, discard, discard));
+        assertEquals(1, MerkleTreeCli.run(new String[] { "build", "does/not/exist" }, discard, discard));
+    }
+
+    @Test
+    public void checkUsageBeforeOpeningStore(@TempDir Path tempDir) {
+        PrintStream discard = new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8);
+        Path store = tempDir.resolve("hashes.store");
+
+        assertEquals(2, MerkleTreeCli.run(new String[] { "shred", COLLECTION.toString(), "--store", store.toString() },
+                discard, discard));
+        assertEquals(2, MerkleTreeCli.run(new String[] { "stamp", COLLECTION.toString(), "--store", store.toString() },
+                discard, discard));
+        assertEquals(2, MerkleTreeCli.run(
+                new String[] { "evidence", COLLECTION.toString(), "--store", store.toString() }, discard, discard));
+        assertFalse(Files.exists(store));
+    }
+}
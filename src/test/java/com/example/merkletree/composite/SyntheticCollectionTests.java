@@ -0,0 +1,55 @@
+package com.example.merkletree.composite;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.MerkleTreeNode;
+import com.example.merkletree.composite.SyntheticCollection.Distribution;
+
+class SyntheticCollectionTests {
+
+    @Test
+    public void generateSameCollectionFromSameSeed() {
+        HashAlgorithm hashAlgorithm = HashAlgorithm.SHA256;
+        SyntheticCollection collection = new SyntheticCollection(42, 4, Distribution.uniform(1, 5),
+                Distribution.exponential(100, 10_000));
+
+        MerkleTreeNode tree = new MerkleTreeNode(collection.getRoot(), hashAlgorithm);
+        MerkleTreeNode sameSeed = new MerkleTreeNode(
+                new SyntheticCollection(42, 4, Distribution.uniform(1, 5), Distribution.exponential(100, 10_000))
+                        .getRoot(),
+                hashAlgorithm);
+        MerkleTreeNode otherSeed = new MerkleTreeNode(
+                new SyntheticCollection(43, 4, Distribution.uniform(1, 5), Distribution.exponential(100, 10_000))
+                        .getRoot(),
+                hashAlgorithm);
+
+        assertArrayEquals(tree.getHash(), sameSeed.getHash());
+        assertFalse(Arrays.equals(tree.getHash(), otherSeed.getHash()));
+        assertEquals(collection.getRoot(), tree.getComposite());
+        assertEquals(1 + 4 + 16 + 64 + 256,
+                new SyntheticCollection(1, 4, Distribution.fixed(4), Distribution.fixed(1)).countNodes());
+    }
+
+    @Test
+    public void generateSameTestCompositesFromSeededRandom() {
+        assertArrayEquals(buildTestComposites(new Random(1)), buildTestComposites(new Random(1)));
+    }
+
+    private static byte[] buildTestComposites(Random random) {
+        List<TestComposite> children = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            children.add(new TestComposite(new ArrayList<>(), random));
+        }
+        return new MerkleTreeNode(new TestComposite(children, random), HashAlgorithm.SHA256).getHash();
+    }
+}
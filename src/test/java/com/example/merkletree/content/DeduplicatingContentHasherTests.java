@@ -0,0 +1,34 @@
+package com.example.merkletree.content;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.MerkleTreeNode;
+import com.example.merkletree.composite.FileComposite;
+
+class DeduplicatingContentHasherTests {
+
+    @Test
+    public void reuseDigestsOfDuplicateFiles() {
+        FileComposite collection = new FileComposite(Path.of("src/test/resources/collection"));
+        HashAlgorithm hashAlgorithm = HashAlgorithm.SHA256;
+
+        MerkleTreeNode expected = new MerkleTreeNode(collection, hashAlgorithm);
+
+        DeduplicatingContentHasher contentHasher = new DeduplicatingContentHasher();
+        MerkleTreeNode deduplicated = new MerkleTreeNode(collection, hashAlgorithm, contentHasher);
+
+        assertArrayEquals(expected.getHash(), deduplicated.getHash());
+        // the three files in representation/ are copies of the ones in the root directory
+        assertEquals(3, contentHasher.getReusedDigests());
+
+        // a second build reuses the digests of all six unchanged files by fingerprint and of both directories
+        new MerkleTreeNode(collection, hashAlgorithm, contentHasher);
+        assertEquals(3 + 6 + 2, contentHasher.getReusedDigests());
+    }
+}
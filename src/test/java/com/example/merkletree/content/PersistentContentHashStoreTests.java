@@ -0,0 +1,164 @@
+package com.example.merkletree.content;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.MerkleTreeNode;
+import com.example.merkletree.composite.FileComposite;
+
+class PersistentContentHashStoreTests {
+    private static final HashAlgorithm HASH_ALGORITHM = HashAlgorithm.SHA256;
+
+    @Test
+    public void reuseDigestsAcrossRuns(@TempDir Path directory) throws IOException {
+        Path collectionRoot = Files.createDirectories(directory.resolve("collection"));
+        for (int i = 0; i < 5; i++) {
+            writeFile(collectionRoot.resolve("document-" + i + ".txt"), "content " + i);
+        }
+        Path storeFile = directory.resolve("content-hashes.store");
+        FileComposite collection = new FileComposite(collectionRoot);
+
+        try (PersistentContentHashStore store = PersistentContentHashStore.open(storeFile)) {
+            MerkleTreeNode tree = new MerkleTreeNode(collection, HASH_ALGORITHM, store);
+            assertArrayEquals(new MerkleTreeNode(collection, HASH_ALGORITHM).getHash(), tree.getHash());
+            assertEquals(0, store.getReusedDigests());
+            assertEquals(5, store.size());
+        }
+
+        // the next run reads no unchanged file, a changed one is hashed again
+        writeFile(collectionRoot.resolve("document-3.txt"), "changed content");
+        try (PersistentContentHashStore store = PersistentContentHashStore.open(storeFile)) {
+            MerkleTreeNode tree = new MerkleTreeNode(new FileComposite(collectionRoot), HASH_ALGORITHM, store);
+            assertArrayEquals(new MerkleTreeNode(collection, HASH_ALGORITHM).getHash(), tree.getHash());
+            assertEquals(4, store.getReusedDigests());
+            assertEquals(5, store.size());
+        }
+
+        // superseded records are dropped by compaction
+        long uncompactedSize = Files.size(storeFile);
+        try (PersistentContentHashStore store = PersistentContentHashStore.open(storeFile)) {
+            store.compact();
+            new MerkleTreeNode(new FileComposite(collectionRoot), HASH_ALGORITHM, store);
+            assertEquals(5, store.getReusedDigests());
+        }
+        assertTrue(Files.size(storeFile) < uncompactedSize);
+    }
+
+    @Test
+    public void truncateIncompleteRecords(@TempDir Path directory) throws IOException {
+        Path collectionRoot = Files.createDirectories(directory.resolve("collection"));
+        for (int i = 0; i < 3; i++) {
+            writeFile(collectionRoot.resolve("document-" + i + ".txt"), "content " + i);
+        }
+        Path storeFile = directory.resolve("content-hashes.store");
+        try (PersistentContentHashStore store = PersistentContentHashStore.open(storeFile)) {
+            new MerkleTreeNode(new FileComposite(collectionRoot), HASH_ALGORITHM, store);
+        }
+        long completeSize = Files.size(storeFile);
+
+        // a crash while appending leaves the beginning of a record behind
+        byte[] written = Files.readAllBytes(storeFile);
+        Files.write(storeFile, Arrays.copyOfRange(written, 8, 40), StandardOpenOption.APPEND);
+
+        try (PersistentContentHashStore store = PersistentContentHashStore.open(storeFile)) {
+            assertEquals(completeSize, Files.size(storeFile));
+            assertEquals(3, store.size());
+            new MerkleTreeNode(new FileComposite(collectionRoot), HASH_ALGORITHM, store);
+            assertEquals(3, store.getReusedDigests());
+        }
+    }
+
+    @Test
+    public void scanStoreLargerThanOneWindow(@TempDir Path directory) throws IOException {
+        // the store is read in windows of 1 MiB, 12,000 records of about 100 bytes or more span at least two
+        Path collectionRoot = Files.createDirectories(directory.resolve("collection"));
+        for (int i = 0; i < 12_000; i++) {
+            writeFile(collectionRoot.resolve("document-" + i + ".txt"), "content " + i);
+        }
+        Path storeFile = directory.resolve("content-hashes.store");
+        try (PersistentContentHashStore store = PersistentContentHashStore.open(storeFile)) {
+            new MerkleTreeNode(new FileComposite(collectionRoot), HASH_ALGORITHM, store);
+        }
+        assertTrue(Files.size(storeFile) > 1 << 20, Files.size(storeFile) + " bytes");
+
+        try (PersistentContentHashStore store = PersistentContentHashStore.open(storeFile)) {
+            assertEquals(12_000, store.size());
+            new MerkleTreeNode(new FileComposite(collectionRoot), HASH_ALGORITHM, store);
+            assertEquals(12_000, store.getReusedDigests());
+        }
+    }
+
+    @Test
+    public void skipRacyFiles(@TempDir Path directory) throws IOException {
+        Path document = Files.createDirectories(directory.resolve("collection")).resolve("document.txt");
+        Files.writeString(document, "just written");
+        Path storeFile = directory.resolve("content-hashes.store");
+        FileComposite collection = new FileComposite(document.getParent());
+
+        // another write within the timestamp granularity would not change the fingerprint, so nothing is stored
+        try (PersistentContentHashStore store = PersistentContentHashStore.open(storeFile)) {
+            MerkleTreeNode tree = new MerkleTreeNode(collection, HASH_ALGORITHM, store);
+            assertArrayEquals(new MerkleTreeNode(collection, HASH_ALGORITHM).getHash(), tree.getHash());
+            assertEquals(0, store.size());
+        }
+
+        Files.setLastModifiedTime(document, FileTime.from(Instant.now().minus(1, ChronoUnit.MINUTES)));
+        try (PersistentContentHashStore store = PersistentContentHashStore.open(storeFile)) {
+            new MerkleTreeNode(new FileComposite(document.getParent()), HASH_ALGORITHM, store);
+            assertEquals(0, store.getReusedDigests());
+            assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    public void compactOnClose(@TempDir Path directory) throws IOException {
+        Path document = Files.createDirectories(directory.resolve("collection")).resolve("document.txt");
+        writeFile(document, "version 0");
+        Path storeFile = directory.resolve("content-hashes.store");
+        try (PersistentContentHashStore store = PersistentContentHashStore.open(storeFile)) {
+            new MerkleTreeNode(new FileComposite(document.getParent()), HASH_ALGORITHM, store);
+        }
+        long singleRecordSize = Files.size(storeFile);
+
+        // every change appends a record, which supersedes the previous one
+        try (PersistentContentHashStore store = PersistentContentHashStore.open(storeFile)) {
+            for (int i = 1; i <= 3; i++) {
+                writeFile(document, "version " + i + " of the document".repeat(i));
+                new MerkleTreeNode(new FileComposite(document.getParent()), HASH_ALGORITHM, store);
+            }
+            assertTrue(Files.size(storeFile) > 3 * singleRecordSize / 2);
+            assertEquals(1, store.size());
+        }
+
+        // four records for one file, so closing compacted the store down to the latest one
+        assertEquals(singleRecordSize, Files.size(storeFile));
+        try (PersistentContentHashStore store = PersistentContentHashStore.open(storeFile)) {
+            MerkleTreeNode tree = new MerkleTreeNode(new FileComposite(document.getParent()), HASH_ALGORITHM, store);
+            assertEquals(1, store.getReusedDigests());
+            assertArrayEquals(new MerkleTreeNode(new FileComposite(document.getParent()), HASH_ALGORITHM).getHash(),
+                    tree.getHash());
+        }
+    }
+
+    /**
+     * Write a file that was last modified a minute ago, so its digest is not considered racy.
+     */
+    private static void writeFile(Path file, String content) throws IOException {
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(1, ChronoUnit.MINUTES)));
+    }
+}
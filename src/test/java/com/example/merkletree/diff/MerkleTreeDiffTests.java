@@ -0,0 +1,80 @@
+package com.example.merkletree.diff;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.MerkleTreeNode;
+import com.example.merkletree.composite.FileComposite;
+import com.example.merkletree.store.MerkleTreeFile;
+
+class MerkleTreeDiffTests {
+
+    @Test
+    public void diffPersistedTreeAgainstChangedCollection(@TempDir Path tempDirectory) throws IOException {
+        Path collection = tempDirectory.resolve("collection");
+        copyDirectory(Path.of("src/test/resources/collection"), collection);
+        HashAlgorithm hashAlgorithm = HashAlgorithm.SHA256;
+
+        MerkleTreeNode oldTree = new MerkleTreeNode(new FileComposite(collection), hashAlgorithm);
+        Path treeFile = tempDirectory.resolve("old.tree");
+        MerkleTreeFile.write(oldTree, treeFile);
+
+        Files.writeString(collection.resolve("representation/metadata.example.json"), "{}");
+        Files.delete(collection.resolve("permission.example.json"));
+        Files.writeString(collection.resolve("representation/new.json"), "{\"new\": true}");
+        MerkleTreeNode newTree = new MerkleTreeNode(new FileComposite(collection), hashAlgorithm);
+
+        try (MerkleTreeFile oldTreeFile = MerkleTreeFile.open(treeFile)) {
+            assertArrayEquals(oldTree.getHash(), oldTreeFile.getRoot().getHash());
+            assertTrue(MerkleTreeDiff.diff(oldTreeFile.getRoot(), oldTree).isEmpty());
+
+            Map<String, TreeChange.Type> changes = new TreeMap<>();
+            for (TreeChange change : MerkleTreeDiff.diff(oldTreeFile.getRoot(), newTree)) {
+                changes.put(change.path(), change.type());
+            }
+            assertEquals(Map.of(
+                    "representation/metadata.example.json", TreeChange.Type.MODIFIED,
+                    "permission.example.json", TreeChange.Type.REMOVED,
+                    "representation/new.json", TreeChange.Type.ADDED), changes);
+        }
+    }
+
+    @Test
+    public void pairChildrenByIdBeforeHash(@TempDir Path collection) throws IOException {
+        HashAlgorithm hashAlgorithm = HashAlgorithm.SHA256;
+        Files.writeString(collection.resolve("a.txt"), "X");
+        Files.writeString(collection.resolve("b.txt"), "Y");
+        MerkleTreeNode oldTree = new MerkleTreeNode(new FileComposite(collection), hashAlgorithm);
+
+        // the content of a moves to b, which must not make b look unchanged
+        Files.writeString(collection.resolve("a.txt"), "Z");
+        Files.writeString(collection.resolve("b.txt"), "X");
+        MerkleTreeNode newTree = new MerkleTreeNode(new FileComposite(collection), hashAlgorithm);
+
+        Map<String, TreeChange.Type> changes = new TreeMap<>();
+        for (TreeChange change : MerkleTreeDiff.diff(oldTree, newTree)) {
+            changes.put(change.path(), change.type());
+        }
+        assertEquals(Map.of("a.txt", TreeChange.Type.MODIFIED, "b.txt", TreeChange.Type.MODIFIED), changes);
+    }
+
+    private static void copyDirectory(Path source, Path target) throws IOException {
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Files.copy(path, target.resolve(source.relativize(path).toString()));
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.merkletree.dss;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.KeyStore.PasswordProtection;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.merkletree.InProcessTimeStampAuthority;
+
+import eu.europa.esig.dss.enumerations.Indication;
+import eu.europa.esig.dss.enumerations.SignatureLevel;
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.TimestampBinary;
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.service.http.commons.FileCacheDataLoader;
+import eu.europa.esig.dss.simplereport.SimpleReport;
+import eu.europa.esig.dss.spi.DSSUtils;
+import eu.europa.esig.dss.spi.validation.CommonCertificateVerifier;
+import eu.europa.esig.dss.spi.x509.CommonTrustedCertificateSource;
+import eu.europa.esig.dss.spi.x509.tsp.TSPSource;
+import eu.europa.esig.dss.token.Pkcs12SignatureToken;
+import eu.europa.esig.dss.validation.SignedDocumentValidator;
+import eu.europa.esig.dss.validation.reports.Reports;
+
+/**
+ * Signs with a certificate issued by a test CA whose CRL is only available from a pre-populated
+ * {@link RevocationCache}, and timestamps with an {@link InProcessTimeStampAuthority}, so no test needs network
+ * access.
+ */
+class BatchContainerServiceTests {
+    private static final String CRL_URL = "http://crl.example.test/test-ca.crl";
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    private static InProcessTimeStampAuthority tsa;
+    private static X509CertificateHolder caCertificate;
+    private static byte[] crl;
+    private static byte[] signerKeyStore;
+
+    @BeforeAll
+    public static void createPki() throws GeneralSecurityException, IOException, OperatorCreationException {
+        tsa = new InProcessTimeStampAuthority();
+        Date now = new Date();
+        Date notBefore = new Date(now.getTime() - 3_600_000);
+        Date notAfter = new Date(now.getTime() + 86_400_000);
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(256);
+
+        KeyPair caKeys = keyPairGenerator.generateKeyPair();
+        X500Name caName = new X500Name("CN=Batch Test CA");
+        ContentSigner caSigner = new JcaContentSignerBuilder("SHA256withECDSA").build(caKeys.getPrivate());
+        caCertificate = new JcaX509v3CertificateBuilder(caName, BigInteger.ONE, notBefore, notAfter, caName,
+                caKeys.getPublic())
+                .addExtension(Extension.basicConstraints, true, new BasicConstraints(true))
+                .addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign))
+                .build(caSigner);
+
+        KeyPair signerKeys = keyPairGenerator.generateKeyPair();
+        GeneralNames crlLocation = new GeneralNames(new GeneralName(GeneralName.uniformResourceIdentifier, CRL_URL));
+        X509CertificateHolder signerCertificate = new JcaX509v3CertificateBuilder(caName, BigInteger.TWO, notBefore,
+                notAfter, new X500Name("CN=Batch Test Signer"), signerKeys.getPublic())
+                .addExtension(Extension.keyUsage, true,
+                        new KeyUsage(KeyUsage.digitalSignature | KeyUsage.nonRepudiation))
+                .addExtension(Extension.cRLDistributionPoints, false, new CRLDistPoint(new DistributionPoint[] {
+                        new DistributionPoint(new DistributionPointName(crlLocation), null, null) }))
+                .build(caSigner);
+
+        // nothing is revoked
+        crl = new X509v2CRLBuilder(caName, notBefore).setNextUpdate(notAfter).build(caSigner).getEncoded();
+
+        JcaX509CertificateConverter converter = new JcaX509CertificateConverter();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("signer", signerKeys.getPrivate(), PASSWORD, new X509Certificate[] {
+                converter.getCertificate(signerCertificate), converter.getCertificate(caCertificate) });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        keyStore.store(out, PASSWORD);
+        signerKeyStore = out.toByteArray();
+    }
+
+    @Test
+    public void signCollectionsConcurrently(@TempDir Path cacheDirectory) throws IOException {
+        List<List<DSSDocument>> collections = collections(4);
+
+        List<DSSDocument> containers;
+        try (BatchContainerService service = new BatchContainerService(
+                certificateVerifier(cacheDirectory.toFile(), false), tspSource(), SignatureLevel.XAdES_BASELINE_T,
+                signingTokens(2), 4)) {
+            containers = service.signAll(collections);
+        }
+
+        assertEquals(collections.size(), containers.size());
+        CommonCertificateVerifier validationVerifier = certificateVerifier(cacheDirectory.toFile(), true);
+        for (DSSDocument container : containers) {
+            assertValid(container, SignatureLevel.XAdES_BASELINE_T, collections.get(0).size(), validationVerifier);
+        }
+    }
+
+    @Test
+    public void extendWithCachedRevocationData(@TempDir Path cacheDirectory) throws IOException {
+        // the shared verifier never goes online, the CRL of the signing certificate must come from the cache
+        CommonCertificateVerifier certificateVerifier = certificateVerifier(cacheDirectory.toFile(), true);
+        for (SignatureLevel signatureLevel : List.of(SignatureLevel.XAdES_BASELINE_LT,
+                SignatureLevel.XAdES_BASELINE_LTA)) {
+            List<List<DSSDocument>> collections = collections(3);
+
+            List<DSSDocument> containers;
+            try (BatchContainerService service = new BatchContainerService(certificateVerifier, tspSource(),
+                    signatureLevel, signingTokens(2), 3)) {
+                containers = service.signAll(collections);
+            }
+
+            for (DSSDocument container : containers) {
+                Reports reports = assertValid(container, signatureLevel, collections.get(0).size(),
+                        certificateVerifier(cacheDirectory.resolve("validation").toFile(), false));
+                // validated without any revocation source, so the CRL was embedded from the cache
+                assertFalse(reports.getDiagnosticData().getAllRevocationData().isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void failWithoutRevocationData(@TempDir Path cacheDirectory) throws IOException {
+        try (BatchContainerService service = new BatchContainerService(
+                certificateVerifier(cacheDirectory.toFile(), false), tspSource(), SignatureLevel.XAdES_BASELINE_LT,
+                signingTokens(1), 1)) {
+            assertThrows(CompletionException.class, () -> service.signAll(collections(1)));
+        }
+    }
+
+    /**
+     * A verifier trusting the test CA and TSA, with an offline revocation cache that holds the CRL of the test CA if
+     * {@code withCrl} is set.
+     */
+    private static CommonCertificateVerifier certificateVerifier(File cacheDirectory, boolean withCrl) {
+        CommonTrustedCertificateSource trustedCertificates = new CommonTrustedCertificateSource();
+        trustedCertificates.addCertificate(certificateToken(caCertificate));
+        trustedCertificates.addCertificate(certificateToken(tsa.getCertificate()));
+        CommonCertificateVerifier certificateVerifier = new CommonCertificateVerifier();
+        certificateVerifier.setTrustedCertSources(trustedCertificates);
+
+        RevocationCache revocationCache = RevocationCache.offline(cacheDirectory);
+        if (withCrl) {
+            // same layout as the cache of CRL responses in RevocationCache
+            FileCacheDataLoader crlCache = new FileCacheDataLoader();
+            crlCache.setFileCacheDirectory(new File(cacheDirectory, "crl"));
+            crlCache.createFile(CRL_URL, crl);
+        }
+        revocationCache.configure(certificateVerifier);
+        return certificateVerifier;
+    }
+
+    private static TSPSource tspSource() {
+        return (digestAlgorithm, digest) -> {
+            TimeStampRequestGenerator generator = new TimeStampRequestGenerator();
+            generator.setCertReq(true);
+            try {
+                return new TimestampBinary(tsa.requestTimeStamp(
+                        generator.generate(new ASN1ObjectIdentifier(digestAlgorithm.getOid()), digest))
+                        .getEncoded());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private static List<Pkcs12SignatureToken> signingTokens(int count) {
+        List<Pkcs12SignatureToken> tokens = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tokens.add(new Pkcs12SignatureToken(signerKeyStore, new PasswordProtection(PASSWORD)));
+        }
+        return tokens;
+    }
+
+    private static List<List<DSSDocument>> collections(int count) {
+        List<List<DSSDocument>> collections = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            collections.add(BatchContainerService.collectDocuments(new File("src/test/resources/collection/")));
+        }
+        return collections;
+    }
+
+    private static Reports assertValid(DSSDocument container, SignatureLevel signatureLevel, int documents,
+            CommonCertificateVerifier certificateVerifier) {
+        SignedDocumentValidator validator = SignedDocumentValidator.fromDocument(container);
+        validator.setCertificateVerifier(certificateVerifier);
+        Reports reports = validator.validateDocument();
+
+        SimpleReport simpleReport = reports.getSimpleReport();
+        String signatureId = simpleReport.getFirstSignatureId();
+        assertEquals(signatureLevel, simpleReport.getSignatureFormat(signatureId));
+        assertEquals(Indication.TOTAL_PASSED, simpleReport.getIndication(signatureId),
+                simpleReport.getSubIndication(signatureId) + ": " + simpleReport.getAdESValidationErrors(signatureId));
+        assertEquals(documents, reports.getDiagnosticData().getSignatureById(signatureId).getSignatureScopes().size());
+        return reports;
+    }
+
+    private static CertificateToken certificateToken(X509CertificateHolder certificate) {
+        try {
+            return DSSUtils.loadCertificate(certificate.getEncoded());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.merkletree.evidence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.InProcessTimeStampAuthority;
+import com.example.merkletree.MerkleTreeNode;
+import com.example.merkletree.composite.Composite;
+import com.example.merkletree.composite.TestComposite;
+
+import eu.europa.esig.dss.diagnostic.EvidenceRecordWrapper;
+import eu.europa.esig.dss.diagnostic.TimestampWrapper;
+import eu.europa.esig.dss.diagnostic.jaxb.XmlDigestMatcher;
+import eu.europa.esig.dss.enumerations.DigestMatcherType;
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.FileDocument;
+import eu.europa.esig.dss.model.InMemoryDocument;
+import eu.europa.esig.dss.spi.validation.CommonCertificateVerifier;
+import eu.europa.esig.dss.validation.SignedDocumentValidator;
+import eu.europa.esig.dss.validation.reports.Reports;
+
+class XmlEvidenceRecordGeneratorTests {
+
+    @Test
+    public void generateValidEvidenceRecords(@TempDir Path outputDirectory) throws IOException {
+        List<TestComposite> leftChildren = new ArrayList<>();
+        leftChildren.add(new TestComposite(new ArrayList<>()));
+        leftChildren.add(new TestComposite(new ArrayList<>()));
+        List<TestComposite> rootChildren = new ArrayList<>();
+        rootChildren.add(new TestComposite(leftChildren));
+        rootChildren.add(new TestComposite(new ArrayList<>()));
+        TestComposite root = new TestComposite(rootChildren);
+
+        MerkleTreeNode tree = new MerkleTreeNode(root, HashAlgorithm.SHA256);
+
+        XmlEvidenceRecordGenerator generator = new XmlEvidenceRecordGenerator(HashAlgorithm.SHA256);
+        InProcessTimeStampAuthority tsa = new InProcessTimeStampAuthority();
+        int count = generator.generate(tree, tsa.timeStampRootHash(tree.getHash(), HashAlgorithm.SHA256),
+                outputDirectory);
+        assertEquals(5, count);
+
+        // pre-order: root, left, left's two children, right
+        List<Composite> documents = List.of(root, rootChildren.get(0), leftChildren.get(0), leftChildren.get(1),
+                rootChildren.get(1));
+        for (int i = 0; i < documents.size(); i++) {
+            DSSDocument evidenceRecordDocument = new FileDocument(outputDirectory.resolve(i + ".xml").toFile());
+            DSSDocument document = new InMemoryDocument(documents.get(i).getContent().getBytes());
+
+            SignedDocumentValidator validator = SignedDocumentValidator.fromDocument(evidenceRecordDocument);
+            validator.setCertificateVerifier(new CommonCertificateVerifier());
+            validator.setDetachedContents(List.of(document));
+            Reports reports = validator.validateDocument();
+
+            List<EvidenceRecordWrapper> evidenceRecords = reports.getDiagnosticData().getEvidenceRecords();
+            assertEquals(1, evidenceRecords.size());
+            EvidenceRecordWrapper evidenceRecord = evidenceRecords.get(0);
+            assertTrue(evidenceRecord.isStructuralValidationValid(),
+                    String.join(", ", evidenceRecord.getStructuralValidationMessages()));
+
+            // hashes of child nodes share the first sequence with the document and are reported as orphans
+            List<XmlDigestMatcher> archiveObjects = evidenceRecord.getDigestMatchers().stream()
+                    .filter(matcher -> matcher.getType() == DigestMatcherType.EVIDENCE_RECORD_ARCHIVE_OBJECT)
+                    .toList();
+            assertEquals(1, archiveObjects.size());
+            assertTrue(archiveObjects.get(0).isDataFound(), "document " + i + " not found in evidence record");
+            assertTrue(archiveObjects.get(0).isDataIntact(), "document " + i + " not intact");
+
+            TimestampWrapper timeStamp = evidenceRecord.getFirstTimestamp();
+            assertTrue(timeStamp.isMessageImprintDataFound());
+            assertTrue(timeStamp.isMessageImprintDataIntact(), "root hash of document " + i + " not timestamped");
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.merkletree.log;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.bouncycastle.asn1.tsp.ArchiveTimeStamp;
+import org.bouncycastle.asn1.tsp.PartialHashtree;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.InProcessTimeStampAuthority;
+import com.example.merkletree.utils.CryptoUtils;
+
+class MerkleLogTests {
+    private static final HashAlgorithm HASH_ALGORITHM = HashAlgorithm.SHA256;
+
+    @Test
+    public void proveInclusionAndConsistency(@TempDir Path directory) throws IOException {
+        List<byte[]> leaves = randomLeaves(600);
+        try (MerkleLog log = MerkleLog.open(directory, HASH_ALGORITHM)) {
+            for (int i = 0; i < leaves.size(); i++) {
+                assertEquals(i, log.append(leaves.get(i)));
+                assertArrayEquals(expectedRoot(leaves.subList(0, i + 1)), log.getRootHash());
+            }
+
+            for (long treeSize : new long[] { 1, 2, 7, 256, 257, 511, 600 }) {
+                byte[] root = log.getRootHash(treeSize);
+                assertArrayEquals(expectedRoot(leaves.subList(0, (int) treeSize)), root);
+                for (long index = 0; index < treeSize; index++) {
+                    assertProof(leaves.get((int) index), log.getInclusionProof(index, treeSize), root);
+                }
+            }
+
+            for (long second = 1; second <= 70; second++) {
+                for (long first = 1; first <= second; first++) {
+                    List<byte[]> proof = log.getConsistencyProof(first, second);
+                    assertTrue(MerkleLog.verifyConsistency(first, second, log.getRootHash(first),
+                            log.getRootHash(second), proof, HASH_ALGORITHM), first + " -> " + second);
+                }
+            }
+            List<byte[]> proof = log.getConsistencyProof(300, 600);
+            assertTrue(MerkleLog.verifyConsistency(300, 600, log.getRootHash(300), log.getRootHash(600), proof,
+                    HASH_ALGORITHM));
+            assertFalse(MerkleLog.verifyConsistency(300, 600, log.getRootHash(299), log.getRootHash(600), proof,
+                    HASH_ALGORITHM));
+            assertFalse(MerkleLog.verifyConsistency(301, 600, log.getRootHash(300), log.getRootHash(600), proof,
+                    HASH_ALGORITHM));
+        }
+    }
+
+    @Test
+    public void discardUncommittedAppends(@TempDir Path tempDirectory) throws IOException {
+        Path directory = tempDirectory.resolve("log");
+        Path crashed = tempDirectory.resolve("crashed");
+        List<byte[]> leaves = randomLeaves(400);
+        byte[] committedRoot;
+
+        try (MerkleLog log = MerkleLog.open(directory, HASH_ALGORITHM)) {
+            leaves.subList(0, 300).forEach(log::append);
+            log.commit();
+            committedRoot = log.getRootHash();
+            leaves.subList(300, 400).forEach(log::append);
+            // a copy of the files before closing looks like the log after a crash
+            copyDirectory(directory, crashed);
+        }
+
+        try (MerkleLog log = MerkleLog.open(crashed, HASH_ALGORITHM)) {
+            assertEquals(300, log.size());
+            assertArrayEquals(committedRoot, log.getRootHash());
+            leaves.subList(300, 400).forEach(log::append);
+        }
+        try (MerkleLog log = MerkleLog.open(crashed, HASH_ALGORITHM)) {
+            assertEquals(400, log.size());
+            assertArrayEquals(expectedRoot(leaves), log.getRootHash());
+            assertProof(leaves.get(42), log.getInclusionProof(42), log.getRootHash());
+        }
+    }
+
+    @Test
+    public void rejectTilesNotMatchingCheckpoint(@TempDir Path directory) throws IOException {
+        try (MerkleLog log = MerkleLog.open(directory, HASH_ALGORITHM)) {
+            randomLeaves(300).forEach(log::append);
+        }
+
+        // 300 = 256 + 32 + 8 + 4, the peak of level 2 is its node 74
+        Path tile = directory.resolve("tile/2/0");
+        byte[] hashes = Files.readAllBytes(tile);
+        hashes[74 * 32] ^= 1;
+        Files.write(tile, hashes);
+        IOException exception = assertThrows(IOException.class, () -> MerkleLog.open(directory, HASH_ALGORITHM));
+        assertTrue(exception.getMessage().contains("checkpoint"), exception.getMessage());
+
+        Files.delete(tile);
+        assertThrows(IOException.class, () -> MerkleLog.open(directory, HASH_ALGORITHM));
+    }
+
+    @Test
+    public void timeStampLogHead(@TempDir Path directory) throws IOException {
+        InProcessTimeStampAuthority timeStampAuthority = new InProcessTimeStampAuthority();
+        List<byte[]> leaves = randomLeaves(20);
+        try (MerkleLog log = MerkleLog.open(directory, HASH_ALGORITHM)) {
+            leaves.subList(0, 10).forEach(log::append);
+            TimeStampToken timeStamp = log.timeStampHead(timeStampAuthority::timeStampRootHash);
+            leaves.subList(10, 20).forEach(log::append);
+
+            // documents of the timestamped head are archived with the old timestamp, even though the log grew
+            ArchiveTimeStamp archiveTimeStamp = log.createArchiveTimeStamp(3, 10);
+            PartialHashtree[] reducedHashTree = archiveTimeStamp.getReducedHashTree();
+            assertArrayEquals(timeStamp.getTimeStampInfo().getMessageImprintDigest(), log.getRootHash(10));
+            assertProof(leaves.get(3), reducedHashTree, timeStamp.getTimeStampInfo().getMessageImprintDigest());
+            assertArrayEquals(timeStamp.getEncoded(), log.getHeadTimeStamp(10).getEncoded());
+        }
+    }
+
+    private static void assertProof(byte[] leaf, PartialHashtree[] path, byte[] root) {
+        assertTrue(path[0].containsHash(leaf));
+        for (int i = 0; i < path.length - 1; i++) {
+            assertTrue(path[i + 1].containsHash(CryptoUtils.hashGroup(path[i].getValues(), HASH_ALGORITHM)));
+        }
+        assertArrayEquals(root, CryptoUtils.hashGroup(path[path.length - 1].getValues(), HASH_ALGORITHM));
+    }
+
+    /**
+     * The root of RFC 9162, calculated recursively in memory.
+     */
+    private static byte[] expectedRoot(List<byte[]> leaves) {
+        if (leaves.size() == 1) {
+            return leaves.get(0);
+        }
+        int k = Integer.highestOneBit(leaves.size() - 1);
+        return CryptoUtils.hashGroup(new byte[][] { expectedRoot(leaves.subList(0, k)),
+                expectedRoot(leaves.subList(k, leaves.size())) }, HASH_ALGORITHM);
+    }
+
+    private static List<byte[]> randomLeaves(int count) {
+        Random random = new Random(7);
+        List<byte[]> leaves = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] leaf = new byte[32];
+            random.nextBytes(leaf);
+            leaves.add(leaf);
+        }
+        return leaves;
+    }
+
+    private static void copyDirectory(Path source, Path target) throws IOException {
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Files.copy(path, target.resolve(source.relativize(path).toString()));
+            }
+        }
+    }
+}
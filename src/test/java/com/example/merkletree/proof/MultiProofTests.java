@@ -0,0 +1,73 @@
+package com.example.merkletree.proof;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.bouncycastle.asn1.tsp.PartialHashtree;
+import org.junit.jupiter.api.Test;
+
+import com.example.merkletree.ContentHasher;
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.MerkleTreeNode;
+import com.example.merkletree.TreeTraversal;
+import com.example.merkletree.composite.Composite;
+import com.example.merkletree.composite.SyntheticCollection;
+import com.example.merkletree.composite.SyntheticCollection.Distribution;
+
+class MultiProofTests {
+    private static final HashAlgorithm HASH_ALGORITHM = HashAlgorithm.SHA256;
+
+    @Test
+    public void proveManyDocumentsAtOnce() throws IOException {
+        for (int maxFanout : new int[] { Integer.MAX_VALUE, 4 }) {
+            Composite root = new SyntheticCollection(36, 5, Distribution.uniform(0, 8), Distribution.uniform(1, 200))
+                    .getRoot();
+            MerkleTreeNode tree = new MerkleTreeNode(root, HASH_ALGORITHM, ContentHasher.DEFAULT, maxFanout);
+
+            List<Composite> documents = new ArrayList<>();
+            List<byte[]> documentHashes = new ArrayList<>();
+            long separateProofLength = 0;
+            Random random = new Random(36);
+            for (MerkleTreeNode node : documentNodes(tree)) {
+                if (random.nextInt(4) == 0) {
+                    documents.add(node.getComposite());
+                    documentHashes.add(node.getContentHash());
+                    for (PartialHashtree group : tree.getPathFromAncestor(node.getHash())) {
+                        separateProofLength += group.getEncoded().length;
+                    }
+                }
+            }
+
+            MultiProof proof = MultiProof.create(tree, documents, HASH_ALGORITHM);
+            byte[] encoded = proof.getEncoded();
+            MultiProof decoded = MultiProof.getInstance(encoded);
+
+            assertArrayEquals(tree.getHash(), decoded.calculateRootHash());
+            assertTrue(decoded.verify(documentHashes, tree.getHash()));
+            assertTrue(encoded.length * 4 < separateProofLength, encoded.length + " vs " + separateProofLength);
+
+            // a document outside of the proof or a different root is rejected
+            List<byte[]> withOtherDocument = new ArrayList<>(documentHashes);
+            withOtherDocument.add(new byte[32]);
+            assertFalse(decoded.verify(withOtherDocument, tree.getHash()));
+            assertFalse(decoded.verify(documentHashes, new byte[32]));
+        }
+    }
+
+    private static List<MerkleTreeNode> documentNodes(MerkleTreeNode tree) {
+        List<MerkleTreeNode> nodes = new ArrayList<>();
+        TreeTraversal.walk(tree, MerkleTreeNode::getChildren, (node, depth) -> {
+            if (node.getComposite() != null) {
+                nodes.add(node);
+            }
+            return true;
+        });
+        return nodes;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.merkletree.shard;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.bouncycastle.asn1.tsp.PartialHashtree;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.MerkleTreeNode;
+import com.example.merkletree.TreeTraversal;
+import com.example.merkletree.composite.FileComposite;
+
+class ShardedTreeBuilderTests {
+
+    @Test
+    public void buildSameTreeInWorkerProcesses(@TempDir Path workDirectory) throws IOException {
+        FileComposite collection = new FileComposite(Path.of("src/test/resources/collection"));
+        ShardedTreeBuilder builder = new ShardedTreeBuilder(HashAlgorithm.SHA256, workDirectory, 2);
+        assertEquals(2, builder.plan(collection).getWorkerCount());
+
+        assertSameTree(collection, builder);
+    }
+
+    @Test
+    public void splitLargeDirectories(@TempDir Path directory) throws IOException {
+        // nearly all content is in one directory two levels down, the children of the root alone cannot be balanced
+        Path collectionRoot = directory.resolve("collection");
+        Files.createDirectories(collectionRoot.resolve("archive/2024"));
+        Files.writeString(collectionRoot.resolve("readme.txt"), "readme");
+        for (int i = 0; i < 16; i++) {
+            Files.write(collectionRoot.resolve("archive/2024/document-" + i + ".bin"), new byte[8192 + i]);
+        }
+        FileComposite collection = new FileComposite(collectionRoot);
+        ShardedTreeBuilder builder = new ShardedTreeBuilder(HashAlgorithm.SHA256, directory.resolve("work"), 4);
+
+        ShardPlan plan = builder.plan(collection);
+        assertTrue(plan.isSplit("archive"));
+        assertTrue(plan.isSplit("archive/2024"));
+        assertEquals(4, plan.getWorkerCount());
+        for (int worker = 0; worker < plan.getWorkerCount(); worker++) {
+            assertTrue(plan.getAssignment(worker).stream().anyMatch(shard -> shard.directory().equals("archive/2024")));
+            // the worker only gets paths relative to the root and output directory it is given
+            List<String> arguments = plan.workerArguments(worker, Path.of("/mnt/collection"), Path.of("shards"));
+            assertEquals(List.of("/mnt/collection", "shards", "SHA256"), arguments.subList(0, 3));
+            assertTrue(arguments.stream().noneMatch(argument -> argument.contains(collectionRoot.toString())));
+        }
+
+        assertSameTree(collection, builder);
+    }
+
+    private static void assertSameTree(FileComposite collection, ShardedTreeBuilder builder) throws IOException {
+        MerkleTreeNode singleProcessTree = new MerkleTreeNode(collection, HashAlgorithm.SHA256);
+        try (ShardedTree shardedTree = builder.build(collection)) {
+            assertArrayEquals(singleProcessTree.getHash(), shardedTree.getHash());
+
+            // the stitched proof of every node matches the proof of the single process build
+            int[] nodes = { 0 };
+            TreeTraversal.walk(singleProcessTree, MerkleTreeNode::getChildren, (node, depth) -> {
+                // searched by identity, the collection contains documents with equal content
+                List<MerkleTreeNode> expected = TreeTraversal.findPath(singleProcessTree,
+                        MerkleTreeNode::getChildren, candidate -> candidate == node);
+                PartialHashtree[] stitched = shardedTree.getPathFromAncestor(node.getId());
+                assertEquals(expected.size(), stitched.length);
+                for (int i = 0; i < stitched.length; i++) {
+                    assertArrayEquals(expected.get(expected.size() - 1 - i).getPartialHashtree().getValues(),
+                            stitched[i].getValues());
+                }
+                nodes[0]++;
+                return true;
+            });
+            assertTrue(nodes[0] > 1);
+            assertNull(shardedTree.getPathFromAncestor("does/not/exist"));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.merkletree.store;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.merkletree.ContentHasher;
+import com.example.merkletree.HashAlgorithm;
+import com.example.merkletree.MerkleTreeNode;
+import com.example.merkletree.composite.FileComposite;
+
+class MerkleTreeFileTests {
+
+    @Test
+    public void rejectOtherFormatVersions(@TempDir Path directory) throws IOException {
+        MerkleTreeNode tree = new MerkleTreeNode(new FileComposite(Path.of("src/test/resources/collection")),
+                HashAlgorithm.SHA256, ContentHasher.DEFAULT, 2);
+        Path treeFile = directory.resolve("collection.tree");
+        MerkleTreeFile.write(tree, treeFile);
+        try (MerkleTreeFile persisted = MerkleTreeFile.open(treeFile)) {
+            assertArrayEquals(tree.getHash(), persisted.getRoot().getHash());
+        }
+
+        // nodes of version 1 files have no content hash flag and would be misread
+        try (FileChannel channel = FileChannel.open(treeFile, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 1), 4);
+        }
+        IOException exception = assertThrows(IOException.class, () -> MerkleTreeFile.open(treeFile));
+        assertTrue(exception.getMessage().contains("version 1"), exception.getMessage());
+    }
+}